@@ -0,0 +1,109 @@
+package game.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Headless comparison of JMH results to a baseline, both written with -rf json
+ *
+ * Usage : Benchmarks [results file] [baseline file] [--tolerance ratio]
+ * Benchmarks slower than the baseline by more than the tolerance (0.2 by default) are reported as regressions and the exit code is 1.
+ * Benchmarks are named after their class, method and square length, like solver.solve.15 for SolverBenchmarks.solve with length 15.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Benchmarks {
+
+	private static final double DEFAULT_TOLERANCE = 0.2;
+	private static final Pattern BENCHMARK = Pattern.compile("\"benchmark\" : \"game\\.bench\\.(\\w+)Benchmarks\\.(\\w+)\"");
+	private static final Pattern LENGTH = Pattern.compile("\"length\" : \"(\\d+)\"");
+	private static final Pattern SCORE = Pattern.compile("\"score\" : ([0-9.Ee+-]+)");
+
+	public static void main(String[] args) throws IOException {
+		File results = new File(args.length > 0 ? args[0] : "build/jmh/results.json");
+		File baseline = new File(args.length > 1 ? args[1] : "bench/baseline.json");
+		double tolerance = Benchmarks.DEFAULT_TOLERANCE;
+
+		for (int k = 2; k < args.length - 1; k++) {
+			if (args[k].equals("--tolerance")) tolerance = Double.parseDouble(args[k + 1]);
+		}
+
+		if (Benchmarks.compare(results, baseline, tolerance) > 0) System.exit(1);
+	}
+
+	/**
+	 * Prints the benchmarks slower than the baseline
+	 * @param results
+	 * @param baseline
+	 * @param tolerance
+	 * @return the number of regressions
+	 * @throws IOException
+	 */
+	private static int compare(File results, File baseline, double tolerance) throws IOException {
+		Map<String, Double> reference = Benchmarks.read(baseline);
+		Map<String, Double> current = Benchmarks.read(results);
+		int regressions = 0;
+
+		for (Map.Entry<String, Double> entry : current.entrySet()) {
+			Double before = reference.get(entry.getKey());
+			if (before == null) {
+				System.out.println(String.format("new        %-32s %.1f ns/op", entry.getKey(), entry.getValue()));
+				continue;
+			}
+
+			double ratio = entry.getValue() / before;
+			if (ratio > 1 + tolerance) {
+				System.out.println(String.format("REGRESSION %-32s %.1f ns/op (baseline %.1f, x%.2f)", entry.getKey(), entry.getValue(), before, ratio));
+				regressions++;
+			} else if (ratio < 1 - tolerance) {
+				System.out.println(String.format("improved   %-32s %.1f ns/op (baseline %.1f, x%.2f)", entry.getKey(), entry.getValue(), before, ratio));
+			}
+		}
+
+		System.out.println(String.format("%d regressions against %s", regressions, baseline.getPath()));
+		return regressions;
+	}
+
+	/**
+	 * @param file results written by JMH with -rf json
+	 * @return the score of each benchmark in nanoseconds per operation
+	 * @throws IOException
+	 */
+	private static Map<String, Double> read(File file) throws IOException {
+		Map<String, Double> results = new LinkedHashMap<String, Double>();
+		String name = null;
+
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			Matcher matcher = Benchmarks.BENCHMARK.matcher(line);
+			if (matcher.find()) {
+				name = matcher.group(1).toLowerCase() + "." + matcher.group(2);
+				continue;
+			}
+			if (name == null) continue;
+
+			matcher = Benchmarks.LENGTH.matcher(line);
+			if (matcher.find()) {
+				name += "." + matcher.group(1);
+				continue;
+			}
+
+			// the first score of a benchmark is its primary metric
+			matcher = Benchmarks.SCORE.matcher(line);
+			if (matcher.find()) {
+				results.put(name, Double.parseDouble(matcher.group(1)));
+				name = null;
+			}
+		}
+		return results;
+	}
+
+}
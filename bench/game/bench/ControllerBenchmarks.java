@@ -0,0 +1,121 @@
+package game.bench;
+
+import java.awt.event.KeyEvent;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.controls.GameController;
+import game.controls.GameController.GameState;
+import game.models.Level;
+
+/**
+ * Benchmarks of the controller : whole levels played or dragged, forced moves, undo and redo, published states
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerBenchmarks {
+
+	@Param({ "5", "15", "25" })
+	public int length;
+
+	private int[][] paths;
+	private int moves;
+	private GameController controller;
+	private int id;
+	private GameController undone;
+	private GameController forced;
+	private GameController painted;
+
+	@Setup
+	public void setUp() {
+		String parameter = Fixtures.getParameter(this.length);
+		this.paths = Fixtures.getPaths(this.length);
+		this.moves = Fixtures.getMoveCount(this.paths);
+
+		this.controller = new GameController(GameState.MAIN_MENU);
+		this.id = this.controller.getLevels().add(new Level(parameter));
+
+		// every move but the last one, so each of them can be taken back
+		this.undone = new GameController(GameState.MAIN_MENU);
+		this.undone.openLevel(this.undone.getLevels().add(new Level(parameter)));
+		Fixtures.drag(this.undone, this.paths, this.moves - 1);
+
+		// every line drawn along its first row, so the way back along its second row is forced
+		this.forced = new GameController(GameState.MAIN_MENU);
+		this.forced.openLevel(this.forced.getLevels().add(new Level(parameter)));
+		for (int[] path : this.paths) {
+			this.forced.click(this.forced.getLevel().getCase(path[0]));
+			this.forced.drag(this.forced.getLevel().getCase(path[Math.min(path.length / 2, this.length - 1)])); // the corner first, a drag goes down as soon as it can
+			this.forced.drag(this.forced.getLevel().getCase(path[path.length / 2]));
+		}
+
+		// every line drawn but the last move, so the level is still displayed
+		this.painted = new GameController(GameState.MAIN_MENU);
+		this.painted.openLevel(this.painted.getLevels().add(new Level(parameter)));
+		Fixtures.play(this.painted, this.paths, this.moves - 1);
+	}
+
+	/**
+	 * @return the state once the whole level is played move by move, after opening it again
+	 */
+	@Benchmark
+	public int action() {
+		this.controller.openLevel(this.id);
+		Fixtures.play(this.controller, this.paths, this.moves);
+		return this.controller.getState().ordinal();
+	}
+
+	/**
+	 * @return the state once the whole level is drawn by dragging the mouse from corner to corner
+	 */
+	@Benchmark
+	public int drag() {
+		this.controller.openLevel(this.id);
+		Fixtures.drag(this.controller, this.paths);
+		return this.controller.getState().ordinal();
+	}
+
+	@Benchmark
+	public int undoRedo() {
+		while (this.undone.undo());
+		while (this.undone.redo());
+		return this.undone.getLevel().getFilledCount();
+	}
+
+	/**
+	 * @return the filled cases once the forced moves are drawn, before they are undone
+	 */
+	@Benchmark
+	public int propagate() {
+		this.forced.keyPressed(KeyEvent.VK_F);
+		int count = this.forced.getLevel().getFilledCount();
+		this.forced.undo();
+		return count;
+	}
+
+	@Benchmark
+	public int publish() {
+		return this.painted.publish().getSquareLength();
+	}
+
+}
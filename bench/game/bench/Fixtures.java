@@ -0,0 +1,145 @@
+package game.bench;
+
+import java.util.Arrays;
+
+import game.controls.GameController;
+import game.models.Level;
+import game.models.LineColor;
+
+/**
+ * Levels whose solution is known, so the benchmarks can play them by script
+ *
+ * Levels are made of U shaped lines covering two rows each, the last row has its own line if the length is odd.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/**
+	 * @param length
+	 * @return a level whose lines go along two rows each and turn back
+	 */
+	static String getParameter(int length) {
+		char[] parameter = new char[length * length];
+		Arrays.fill(parameter, '0');
+
+		int[][] paths = Fixtures.getPaths(length);
+		for (int color = 0; color < paths.length; color++) {
+			char letter = LineColor.values()[color].name().charAt(0);
+			parameter[paths[color][0]] = letter;
+			parameter[paths[color][paths[color].length - 1]] = letter;
+		}
+		return new String(parameter);
+	}
+
+	/**
+	 * @param length
+	 * @return the solution paths of getParameter(length)
+	 */
+	static int[][] getPaths(int length) {
+		int[][] paths = new int[(length + 1) / 2][];
+
+		for (int color = 0; color < paths.length; color++) {
+			int ligne = 2 * color;
+			boolean single = ligne == length - 1;
+			int[] path = new int[single ? length : 2 * length];
+
+			for (int colonne = 0; colonne < length; colonne++) {
+				path[colonne] = ligne * length + colonne;
+				if (!single) path[length + colonne] = (ligne + 1) * length + length - 1 - colonne;
+			}
+			paths[color] = path;
+		}
+		return paths;
+	}
+
+	/**
+	 * @param paths
+	 * @return the number of moves playing every path
+	 */
+	static int getMoveCount(int[][] paths) {
+		int moves = 0;
+		for (int[] path : paths) moves += path.length;
+		return moves;
+	}
+
+	/**
+	 * @param length
+	 * @return a level with a single line whose solution is getSnakePath(length)
+	 */
+	static String getSnakeParameter(int length) {
+		char[] parameter = new char[length * length];
+		Arrays.fill(parameter, '0');
+
+		int[] path = Fixtures.getSnakePath(length);
+		parameter[path[0]] = LineColor.values()[0].name().charAt(0);
+		parameter[path[path.length - 1]] = LineColor.values()[0].name().charAt(0);
+		return new String(parameter);
+	}
+
+	/**
+	 * @param length
+	 * @return a path zigzagging through every row
+	 */
+	static int[] getSnakePath(int length) {
+		int[] path = new int[length * length];
+		for (int k = 0; k < path.length; k++) {
+			int ligne = k / length;
+			path[k] = ligne * length + (ligne % 2 == 0 ? k % length : length - 1 - k % length);
+		}
+		return path;
+	}
+
+	/**
+	 * Plays the first moves of the solution, line by line
+	 * @param controller
+	 * @param paths
+	 * @param moves
+	 */
+	static void play(GameController controller, int[][] paths, int moves) {
+		Level level = controller.getLevel();
+		for (int[] path : paths) {
+			for (int position = 0; position < path.length && moves > 0; position++, moves--) {
+				controller.action(position == 0, level.getCase(path[position]));
+			}
+		}
+	}
+
+	/**
+	 * Plays the first moves of the solution one case at a time, as clicks then drags, so each of them is a move of the history
+	 * @param controller
+	 * @param paths
+	 * @param moves
+	 */
+	static void drag(GameController controller, int[][] paths, int moves) {
+		Level level = controller.getLevel();
+		for (int[] path : paths) {
+			for (int position = 0; position < path.length && moves > 0; position++, moves--) {
+				if (position == 0) controller.click(level.getCase(path[position]));
+				else controller.drag(level.getCase(path[position]));
+			}
+		}
+	}
+
+	/**
+	 * Draws every path by selecting its first case then dragging to each of its corners
+	 * @param controller
+	 * @param paths
+	 */
+	static void drag(GameController controller, int[][] paths) {
+		Level level = controller.getLevel();
+		for (int[] path : paths) {
+			controller.action(true, level.getCase(path[0]));
+			for (int position = 1; position < path.length; position++) {
+				if (position == path.length - 1 || path[position + 1] - path[position] != path[position] - path[position - 1]) controller.drag(level.getCase(path[position]));
+			}
+		}
+	}
+
+}
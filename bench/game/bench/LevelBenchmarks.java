@@ -0,0 +1,101 @@
+package game.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.models.Level;
+import game.models.Line;
+import game.models.LineColor;
+
+/**
+ * Benchmarks of the level model : parsing, filling, case lookups and line edits
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBenchmarks {
+
+	@Param({ "5", "15", "25" })
+	public int length;
+
+	private String parameter;
+	private Level filled;
+	private Level level;
+	private Line line;
+	private Level snake;
+	private int[] path;
+
+	@Setup
+	public void setUp() {
+		this.parameter = Fixtures.getParameter(this.length);
+		this.filled = new Level(this.parameter);
+		this.level = new Level(this.parameter);
+
+		// a single line through every case
+		this.snake = new Level(Fixtures.getSnakeParameter(this.length));
+		this.line = this.snake.getLine(LineColor.fromCode(this.snake.getNode(0)));
+		this.path = Fixtures.getSnakePath(this.length);
+		for (int position = 0; position < this.path.length; position++) {
+			if (position == 0) this.line.reset(this.snake.getCase(this.path[0]));
+			else this.line.add(this.snake.getCase(this.path[position]));
+		}
+	}
+
+	@Benchmark
+	public int parse() {
+		return new Level(this.parameter).getCaseCount();
+	}
+
+	@Benchmark
+	public int fill() {
+		this.filled.fill();
+		return this.filled.getFilledCount();
+	}
+
+	/**
+	 * @return the sum of the abscissas of every case, looked up by row and column
+	 */
+	@Benchmark
+	public long getCase() {
+		long sum = 0;
+		for (int i = 0; i < this.length; i++) {
+			for (int j = 0; j < this.length; j++) sum += this.level.getCase(i, j).getX();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public boolean isFinished() {
+		return this.level.isFinished();
+	}
+
+	/**
+	 * @return the size of a line through every case once cut at its middle then drawn again
+	 */
+	@Benchmark
+	public int removeFrom() {
+		this.line.removeFrom(this.snake.getCase(this.path[this.path.length / 2]));
+		for (int position = this.path.length / 2; position < this.path.length; position++) this.line.add(this.snake.getCase(this.path[position]));
+		return this.line.size();
+	}
+
+}
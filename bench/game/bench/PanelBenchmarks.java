@@ -0,0 +1,69 @@
+package game.bench;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.controls.GameController;
+import game.controls.GameController.GameState;
+import game.controls.GamePanel;
+import game.controls.GameWindow;
+import game.models.Level;
+
+/**
+ * Benchmark of the rendering of a level in an offscreen image
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PanelBenchmarks {
+
+	@Param({ "5", "15", "25" })
+	public int length;
+
+	private GamePanel panel;
+	private BufferedImage image;
+
+	@Setup
+	public void setUp() {
+		int[][] paths = Fixtures.getPaths(this.length);
+
+		// every line drawn but the last move, so the level is still displayed
+		GameController controller = new GameController(GameState.MAIN_MENU);
+		controller.openLevel(controller.getLevels().add(new Level(Fixtures.getParameter(this.length))));
+		Fixtures.play(controller, paths, Fixtures.getMoveCount(paths) - 1);
+		controller.publish();
+
+		this.panel = new GamePanel(controller);
+		this.image = new BufferedImage(GameWindow.WINDOW_LENGTH, GameWindow.WINDOW_LENGTH, BufferedImage.TYPE_INT_RGB);
+	}
+
+	@Benchmark
+	public int paint() {
+		Graphics g = this.image.getGraphics();
+		this.panel.paint(g);
+		g.dispose();
+		return this.image.getRGB(0, 0);
+	}
+
+}
@@ -0,0 +1,117 @@
+package game.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.controls.GameController;
+import game.controls.GameController.GameState;
+import game.models.Case;
+import game.models.Level;
+import game.models.Line;
+import game.models.LineColor;
+import game.solver.Bitboard;
+import game.solver.Connectivity;
+import game.solver.SolutionCache;
+import game.solver.Solver;
+
+/**
+ * Benchmarks of the solver code : bitboards of a half played level, dead end checks, whole solves and cached solutions
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmarks {
+
+	@Param({ "5", "15", "25" })
+	public int length;
+
+	private String parameter;
+	private Level played;
+	private Bitboard board;
+	private long[] mask;
+	private Line drawn;
+	private Connectivity connectivity;
+	private SolutionCache cache;
+	private Level solved;
+
+	@Setup
+	public void setUp() {
+		this.parameter = Fixtures.getParameter(this.length);
+		int[][] paths = Fixtures.getPaths(this.length);
+
+		// half of the level played, as the solver and validation code see it
+		GameController half = new GameController(GameState.MAIN_MENU);
+		half.openLevel(half.getLevels().add(new Level(this.parameter)));
+		Fixtures.play(half, paths, Fixtures.getMoveCount(paths) / 2);
+		this.played = half.getLevel();
+		this.board = Bitboard.of(this.played);
+		this.mask = this.board.newMask();
+
+		this.drawn = this.played.getLine(LineColor.fromCode(this.played.getNode(paths[0][0])));
+		this.connectivity = new Connectivity();
+		this.connectivity.update(this.played);
+
+		this.cache = new SolutionCache();
+		this.cache.put(this.parameter, new Solver(this.parameter).solve());
+		this.solved = new Level(this.parameter);
+	}
+
+	@Benchmark
+	public int bitboardOf() {
+		return Bitboard.of(this.played).getWordCount();
+	}
+
+	@Benchmark
+	public int bitboardCopy() {
+		return this.board.copy().getWordCount();
+	}
+
+	@Benchmark
+	public int stranded() {
+		return this.board.getStrandedRegions(this.mask);
+	}
+
+	@Benchmark
+	public long solve() {
+		return new Solver(this.parameter).solve().getNodes();
+	}
+
+	/**
+	 * @return the dead cases once the last case of a line is taken back then drawn again, each change followed by a dead end check
+	 */
+	@Benchmark
+	public int connectivityUpdate() {
+		Case last = this.drawn.getLast();
+		this.drawn.removeFrom(last);
+		this.connectivity.update(this.played);
+		this.drawn.add(last);
+		this.connectivity.update(this.played);
+		this.played.clearChanges();
+		return this.connectivity.getDeadCases().cardinality();
+	}
+
+	@Benchmark
+	public int cacheGet() {
+		return this.cache.get(this.solved).getPaths().size();
+	}
+
+}
@@ -0,0 +1,109 @@
+package game;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import game.models.LevelLibrary;
+import game.models.LevelPack;
+import game.solver.Analyzer;
+import game.solver.Solution;
+import game.solver.Solver;
+
+/**
+ * Headless class converting levels files between the levels.txt syntax and binary level packs
+ * 
+ * Usage : Converter pack [levels file] [pack file] [--solve [time budget per level in ms]]
+ *         Converter unpack [pack file] [levels file]
+ * With --solve, each level is solved and the checksum of its solution and its difficulty are stored in the pack,
+ * levels of the same size are then ordered by difficulty
+ * 
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Converter {
+	
+	private static final long DEFAULT_TIMEOUT = 10000;
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3 || !(args[0].equals("pack") || args[0].equals("unpack"))) {
+			System.out.println("Usage : Converter pack <levels file> <pack file> [--solve [time budget per level in ms]]");
+			System.out.println("        Converter unpack <pack file> <levels file>");
+			return;
+		}
+		
+		File input = new File(args[1]);
+		File output = new File(args[2]);
+		
+		if (args[0].equals("pack")) {
+			boolean solve = args.length > 3 && args[3].equals("--solve");
+			long timeout = args.length > 4 ? Long.parseLong(args[4]) : Converter.DEFAULT_TIMEOUT;
+			Converter.pack(input, output, solve, timeout);
+		} else {
+			Converter.unpack(input, output);
+		}
+	}
+	
+	public static void pack(File input, File output, boolean solve, long timeout) throws IOException {
+		LevelLibrary levels = new LevelLibrary(input);
+		
+		List<String> parameters = new ArrayList<String>(levels.size());
+		byte[] difficulties = solve ? new byte[levels.size()] : null;
+		long[] checksums = solve ? new long[levels.size()] : null;
+		
+		for (int id = 0; id < levels.size(); id++) {
+			parameters.add(levels.getParameter(id));
+			
+			if (solve) {
+				Solver solver = new Solver(parameters.get(id));
+				solver.setTimeout(timeout);
+				Solution solution = solver.count(2);
+				difficulties[id] = (byte) Analyzer.getDifficulty(solution);
+				checksums[id] = solution.isSolved() ? solution.getChecksum() : -1;
+			}
+		}
+		
+		if (solve) {
+			// levels of the same size are ordered from the easiest to the hardest, levels with several or no solution last
+			byte[] keys = difficulties;
+			Integer[] order = new Integer[parameters.size()];
+			for (int k = 0; k < order.length; k++) order[k] = k;
+			Arrays.sort(order, Comparator.comparing((Integer k) -> levels.getSquareLength(k)).thenComparing(k -> keys[k] & 0xFF));
+			
+			List<String> sorted = new ArrayList<String>(order.length);
+			byte[] sortedDifficulties = new byte[order.length];
+			long[] sortedChecksums = new long[order.length];
+			for (int k = 0; k < order.length; k++) {
+				sorted.add(parameters.get(order[k]));
+				sortedDifficulties[k] = difficulties[order[k]];
+				sortedChecksums[k] = checksums[order[k]];
+			}
+			
+			parameters = sorted;
+			difficulties = sortedDifficulties;
+			checksums = sortedChecksums;
+		}
+		
+		LevelPack.write(output, parameters, difficulties, checksums);
+		System.out.println(String.format("%d levels packed from %s (%d bytes) to %s (%d bytes)", parameters.size(), input.getPath(), input.length(), output.getPath(), output.length()));
+	}
+	
+	public static void unpack(File input, File output) throws IOException {
+		LevelPack pack = new LevelPack(input);
+		
+		try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(output.toPath()))) {
+			pack.writeText(stream);
+		}
+		
+		System.out.println(String.format("%d levels unpacked from %s to %s", pack.size(), input.getPath(), output.getPath()));
+	}
+
+}
@@ -0,0 +1,64 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import game.models.Canonical;
+import game.models.KeySet;
+
+/**
+ * Headless class removing from a levels file the levels that are rotations, reflections or recolorings of a level before them
+ *
+ * Usage : Deduplicator <levels file> <output file>
+ * The file is read and written line by line in a single pass, only the Canonical key of each level is kept in memory :
+ * a million levels take 16 MB whatever their size.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Deduplicator {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage : Deduplicator <levels file> <output file>");
+			return;
+		}
+
+		File input = new File(args[0]);
+		File output = new File(args[1]);
+
+		Canonical canonical = new Canonical();
+		KeySet keys = new KeySet(1 << 16);
+		int levelCount = 0;
+		int duplicateCount = 0;
+		long start = System.nanoTime();
+
+		try (BufferedReader reader = Files.newBufferedReader(input.toPath(), StandardCharsets.ISO_8859_1);
+				BufferedWriter writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.ISO_8859_1)) {
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) continue;
+
+				levelCount++;
+				if (keys.add(canonical.compute(line))) {
+					writer.write(line);
+					writer.newLine();
+				} else {
+					duplicateCount++;
+				}
+			}
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%d levels read in %.2f s (%.0f levels/s) : %d duplicates removed, %d levels written to %s", levelCount, seconds, levelCount / seconds, duplicateCount, levelCount - duplicateCount, output.getPath()));
+		System.out.println(String.format("Keys : %.1f MB", keys.getFootprint() / 1e6));
+	}
+
+}
@@ -1,8 +1,11 @@
 package game;
 
 import java.awt.GraphicsConfiguration;
+import java.io.File;
+import java.io.IOException;
 
 import game.controls.GameWindow;
+import game.controls.Trace;
 
 /**
  * Main class launching the game
@@ -10,8 +13,12 @@ import game.controls.GameWindow;
  * 
  * Select a level with the MOUSE
  * Change level page with ARROWS or QD keys
- * Control flows with the MOUSE, ARROWS or with ZQSD keys
+ * Control flows with the MOUSE (click or drag), ARROWS or with ZQSD keys
  * Pause current game and return to main menu with ESCAPE
+ * Undo a move with U, redo it with R
+ * Press H to play the next correct move (a beep means current lines lead to a dead end)
+ * 
+ * Usage : Game [--record trace file] records every input played in a level, to be replayed by Replay
  * 
  * @author Romain Milon
  * @author Raphal Breteau
@@ -21,8 +28,9 @@ import game.controls.GameWindow;
 public class Game {
 
 	public static GraphicsConfiguration gc;
-	public static void main(String[] args) {
-		new GameWindow(gc);
+	public static void main(String[] args) throws IOException {
+		GameWindow window = new GameWindow(gc);
+		if (args.length > 1 && args[0].equals("--record")) window.getGameLoop().setTrace(new Trace(new File(args[1])));
 	}
 
 }
@@ -0,0 +1,161 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import game.models.Level;
+import game.solver.LevelGenerator;
+
+/**
+ * Headless class generating levels with a single solution on all cores
+ *
+ * Usage : Generator [number of levels] [output file] [--size min[-max]] [--seed seed] [--nodes node budget per check] [--timeout ms per level]
+ * Levels are written to a levels.txt compatible file, sorted by square length, then the throughput of each length is printed.
+ * Big boards are often given up : past 15, the Solver rarely proves a level unique within its node budget.
+ * Each level only depends on the seed and its position, so the same arguments always give the same file.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Generator {
+
+	private static final int TASK_SIZE = 4; // levels generated sequentially by a single task, smaller ranges are not split
+
+	private static final AtomicInteger FAILED = new AtomicInteger();
+	private static final AtomicIntegerArray GENERATED = new AtomicIntegerArray(Level.MAX_SQUARE_LENGTH + 1); // levels of each square length
+	private static final AtomicIntegerArray GIVEN_UP = new AtomicIntegerArray(Level.MAX_SQUARE_LENGTH + 1);
+	private static final AtomicLongArray TIMES = new AtomicLongArray(Level.MAX_SQUARE_LENGTH + 1); // nanoseconds spent on each square length, over all threads
+
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		File output = new File(args.length > 1 ? args[1] : "generated.txt");
+		int minLength = Level.MIN_SQUARE_LENGTH;
+		int maxLength = Level.MAX_SQUARE_LENGTH;
+		long seed = System.nanoTime();
+		long nodeLimit = LevelGenerator.DEFAULT_NODE_LIMIT;
+		long timeout = LevelGenerator.DEFAULT_TIMEOUT;
+
+		for (int k = 2; k < args.length - 1; k += 2) {
+			if (args[k].equals("--size")) {
+				String[] bounds = args[k + 1].split("-");
+				minLength = Integer.parseInt(bounds[0]);
+				maxLength = Integer.parseInt(bounds[bounds.length - 1]);
+			} else if (args[k].equals("--seed")) {
+				seed = Long.parseLong(args[k + 1]);
+			} else if (args[k].equals("--nodes")) {
+				nodeLimit = Long.parseLong(args[k + 1]);
+			} else if (args[k].equals("--timeout")) {
+				timeout = Long.parseLong(args[k + 1]);
+			}
+		}
+
+		if (minLength < Level.MIN_SQUARE_LENGTH || maxLength > Level.MAX_SQUARE_LENGTH || minLength > maxLength) {
+			System.out.println("Square lengths must be between " + Level.MIN_SQUARE_LENGTH + " and " + Level.MAX_SQUARE_LENGTH);
+			return;
+		}
+
+		String[] levels = new String[count];
+
+		ForkJoinPool pool = new ForkJoinPool();
+		long start = System.nanoTime();
+		pool.invoke(new GenerationTask(levels, 0, count, minLength, maxLength, seed, nodeLimit, timeout));
+		pool.shutdown();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		List<String> lines = new ArrayList<String>(count);
+		for (String level : levels) {
+			if (level != null) lines.add(level);
+		}
+		Files.write(output.toPath(), lines, StandardCharsets.ISO_8859_1);
+
+		System.out.println(String.format("%d levels generated in %.2f s (%.1f levels/min) on %d threads with seed %d, %d given up", lines.size(), seconds, 60 * lines.size() / seconds, pool.getParallelism(), seed, Generator.FAILED.get()));
+		for (int length = minLength; length <= maxLength; length++) {
+			int generated = Generator.GENERATED.get(length);
+			if (generated + Generator.GIVEN_UP.get(length) == 0) continue;
+
+			double time = Generator.TIMES.get(length) / 1e9;
+			System.out.println(String.format("%2dx%-2d : %d levels, %d given up, %.2f s/thread (%.1f levels/min/thread)", length, length, generated, Generator.GIVEN_UP.get(length), time, 60 * generated / time));
+		}
+		System.out.println("Levels written to " + output.getPath());
+	}
+
+	/**
+	 * @param board
+	 * @param count
+	 * @param minLength
+	 * @param maxLength
+	 * @return the square length of the board-th level out of count, lengths never decrease so the output stays sorted
+	 */
+	private static int getSquareLength(int board, int count, int minLength, int maxLength) {
+		return minLength + (int) ((long) board * (maxLength - minLength + 1) / count);
+	}
+
+	/**
+	 * Task generating a range of levels, split in halves so idle threads can steal work
+	 */
+	private static class GenerationTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -3043316427750135460L;
+
+		private final String[] levels;
+		private final int from;
+		private final int to;
+		private final int minLength;
+		private final int maxLength;
+		private final long seed;
+		private final long nodeLimit;
+		private final long timeout;
+		public GenerationTask(String[] levels, int from, int to, int minLength, int maxLength, long seed, long nodeLimit, long timeout) {
+			this.levels = levels;
+			this.from = from;
+			this.to = to;
+			this.minLength = minLength;
+			this.maxLength = maxLength;
+			this.seed = seed;
+			this.nodeLimit = nodeLimit;
+			this.timeout = timeout;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > Generator.TASK_SIZE) {
+				int middle = (this.from + this.to) >>> 1;
+				RecursiveAction.invokeAll(new GenerationTask(this.levels, this.from, middle, this.minLength, this.maxLength, this.seed, this.nodeLimit, this.timeout), new GenerationTask(this.levels, middle, this.to, this.minLength, this.maxLength, this.seed, this.nodeLimit, this.timeout));
+				return;
+			}
+
+			LevelGenerator generator = null;
+			for (int board = this.from; board < this.to; board++) {
+				int length = Generator.getSquareLength(board, this.levels.length, this.minLength, this.maxLength);
+				if (generator == null || generator.getSquareLength() != length) {
+					generator = new LevelGenerator(length);
+					generator.setNodeLimit(this.nodeLimit);
+					generator.setTimeout(this.timeout);
+				}
+
+				long start = System.nanoTime();
+				this.levels[board] = generator.generate(LevelGenerator.getSeed(this.seed, board));
+				Generator.TIMES.addAndGet(length, System.nanoTime() - start);
+				if (this.levels[board] == null) {
+					Generator.FAILED.incrementAndGet();
+					Generator.GIVEN_UP.incrementAndGet(length);
+				} else {
+					Generator.GENERATED.incrementAndGet(length);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,258 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import game.controls.GameController;
+import game.controls.GameController.GameState;
+import game.controls.Trace;
+import game.models.Case;
+import game.models.Level;
+import game.models.LevelLibrary;
+
+/**
+ * Headless class replaying input traces (see Trace) against a GameController as fast as possible, without any window
+ *
+ * Usage : Replay <trace file> [--repeat runs] [--warmup runs]
+ * Reports the actions per second, the median and 99th percentile latency of an action and the bytes allocated per action.
+ * Levels of the trace are opened fresh at each run, so every run plays the same game.
+ * Expectations of the trace are checked at each run, the exit code is 1 if any of them failed.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Replay {
+
+	private static final int LEVEL = 0;
+	private static final int SELECT = 1;
+	private static final int DRAW = 2;
+	private static final int KEY = 3;
+	private static final int EXPECT = 4;
+
+	private final GameController controller;
+	private final List<int[]> commands = new ArrayList<int[]>(); // type followed by its arguments, then the line of the trace
+	private int actionCount = 0; // actions of a single run
+
+	private final com.sun.management.ThreadMXBean threads; // null if allocations cannot be measured on this JVM
+	private long[] latencies = new long[0]; // in nanoseconds, one per action of the measured runs
+	private long allocated; // bytes allocated by the actions of the measured runs
+	private int failures;
+	private int runs; // measured runs so far
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage : Replay <trace file> [--repeat runs] [--warmup runs]");
+			return;
+		}
+
+		int repeat = 1;
+		int warmup = 0;
+		for (int k = 1; k < args.length - 1; k++) {
+			if (args[k].equals("--repeat")) repeat = Integer.parseInt(args[k + 1]);
+			else if (args[k].equals("--warmup")) warmup = Integer.parseInt(args[k + 1]);
+		}
+
+		Replay replay = new Replay(Files.readAllLines(new File(args[0]).toPath(), StandardCharsets.ISO_8859_1));
+		for (int run = 0; run < warmup; run++) replay.run(false);
+
+		long start = System.nanoTime();
+		replay.measure(repeat);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(replay.getReport(repeat, seconds));
+		if (replay.failures > 0) System.exit(1);
+	}
+
+	/**
+	 * Parses a trace, its levels are added to a library of its own so nothing is ever saved
+	 * @param lines
+	 */
+	public Replay(List<String> lines) {
+		this.controller = new GameController(GameState.MAIN_MENU, new LevelLibrary());
+
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		boolean measured = threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+		if (measured) ((com.sun.management.ThreadMXBean) threads).setThreadAllocatedMemoryEnabled(true);
+		this.threads = measured ? (com.sun.management.ThreadMXBean) threads : null;
+
+		for (int number = 1; number <= lines.size(); number++) {
+			String line = lines.get(number - 1).trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+
+			String[] words = line.split("\\s+");
+			try {
+
+				this.commands.add(this.parse(words, number));
+
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException(String.format("Line %d of the trace (%s) is not a valid command", number, line), e);
+			}
+		}
+	}
+
+	/**
+	 * @param words
+	 * @param number line of the trace
+	 * @return the command
+	 */
+	private int[] parse(String[] words, int number) {
+		switch (words[0]) {
+		case Trace.LEVEL:
+			int id = this.getController().getLevels().add(new Level(words.length > 1 ? words[1] : ""));
+			return new int[] { Replay.LEVEL, id, number };
+		case Trace.SELECT:
+			this.actionCount++;
+			if (words.length < 3) return new int[] { Replay.SELECT, -1, -1, number };
+			return new int[] { Replay.SELECT, Integer.parseInt(words[1]), Integer.parseInt(words[2]), number };
+		case Trace.DRAW:
+			this.actionCount++;
+			return new int[] { Replay.DRAW, Integer.parseInt(words[1]), Integer.parseInt(words[2]), number };
+		case Trace.KEY:
+			int keyCode = Trace.getKeyCode(words[1]);
+			if (keyCode < 0) throw new IllegalArgumentException("Unknown key " + words[1]);
+			this.actionCount++;
+			return new int[] { Replay.KEY, keyCode, number };
+		case Trace.EXPECT:
+			return new int[] { Replay.EXPECT, GameState.valueOf(words[1]).ordinal(), words.length > 2 ? Integer.parseInt(words[2]) : -1, number };
+		default:
+			throw new IllegalArgumentException("Unknown command " + words[0]);
+		}
+	}
+
+	/**
+	 * Plays the trace several times, recording the latency and allocations of each action
+	 * @param runs
+	 */
+	public void measure(int runs) {
+		this.latencies = new long[this.getActionCount() * runs];
+		this.allocated = 0;
+		this.failures = 0;
+
+		for (this.runs = 0; this.runs < runs; this.runs++) this.run(true);
+	}
+
+	/**
+	 * Plays every command of the trace once
+	 * @param measured true to record the latency and allocations of each action, see measure
+	 */
+	private void run(boolean measured) {
+		GameController controller = this.getController();
+		int action = 0;
+		int offset = this.runs * this.getActionCount();
+
+		for (int[] command : this.commands) {
+			if (command[0] == Replay.LEVEL) {
+				controller.getLevels().get(command[1]).fill();
+				controller.openLevel(command[1]);
+				controller.clearChanges();
+				continue;
+			}
+
+			if (command[0] == Replay.EXPECT) {
+				this.check(command, measured);
+				continue;
+			}
+
+			long bytes = measured && this.threads != null ? this.threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+			long start = System.nanoTime();
+
+			this.play(command);
+
+			long time = System.nanoTime() - start;
+			if (measured) {
+				if (this.threads != null) this.allocated += this.threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes;
+				this.latencies[offset + action] = time;
+			}
+			action++;
+
+			controller.clearChanges(); // as the panel does once it has repainted the changes
+		}
+	}
+
+	/**
+	 * Plays an action the way GameListener does, in cell coordinates
+	 * @param command
+	 */
+	private void play(int[] command) {
+		GameController controller = this.getController();
+		Level level = controller.getLevel();
+
+		switch (command[0]) {
+		case Replay.SELECT:
+			controller.click(level != null ? level.getCase(command[1], command[2]) : null);
+			break;
+		case Replay.DRAW:
+			Case next = level != null ? level.getCase(command[1], command[2]) : null;
+			if (next != null) controller.drag(next);
+			break;
+		case Replay.KEY:
+			controller.keyPressed(command[1]);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Checks an expectation, failures of measured runs are counted
+	 * @param command
+	 * @param measured
+	 */
+	private void check(int[] command, boolean measured) {
+		GameState expected = GameState.values()[command[1]];
+		GameState state = this.getController().getState();
+		Level level = this.getController().getLevel();
+		int filled = level != null ? level.getFilledCount() : 0;
+
+		if (state.equals(expected) && (command[2] < 0 || filled == command[2])) return;
+
+		if (measured && this.failures++ == 0) {
+			System.out.println(String.format("Line %d : expected %s%s, got %s with %d filled cases", command[command.length - 1], expected, command[2] < 0 ? "" : " with " + command[2] + " filled cases", state, filled));
+		}
+	}
+
+	/**
+	 * @param runs
+	 * @param seconds
+	 * @return the summary of the measured runs
+	 */
+	private String getReport(int runs, double seconds) {
+		long[] sorted = this.latencies.clone();
+		Arrays.sort(sorted);
+		int actions = sorted.length;
+
+		String allocation = this.threads != null && actions > 0 ? String.format("%.1f bytes/action", (double) this.allocated / actions) : "allocations not measured";
+		return String.format("%d actions (%d runs) replayed in %.3f s : %.0f actions/s, p50 %.2f us, p99 %.2f us, %s, %d failed expectations",
+				actions, runs, seconds, actions / seconds, Replay.getPercentile(sorted, 0.50) / 1e3, Replay.getPercentile(sorted, 0.99) / 1e3, allocation, this.failures);
+	}
+
+	/**
+	 * @param sorted
+	 * @param percentile between 0 and 1
+	 * @return the value under which lies the percentile of sorted values, 0 if there is none
+	 */
+	private static long getPercentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) return 0;
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+	}
+
+	public GameController getController() {
+		return controller;
+	}
+
+	/**
+	 * @return the number of actions of a single run
+	 */
+	public int getActionCount() {
+		return actionCount;
+	}
+
+}
@@ -0,0 +1,127 @@
+package game;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import game.controls.GameController;
+import game.models.LevelLibrary;
+import game.solver.Solution;
+import game.solver.Solver;
+import game.solver.TranspositionTable;
+
+/**
+ * Headless class solving and validating every level of a levels file on all cores
+ * 
+ * Usage : Validator [levels file] [report file] [time budget per level in ms]
+ * The report is a CSV file with one line per level, written as soon as the level is solved
+ * Every solver shares a transposition table, states found without solution are not searched again
+ * 
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Validator {
+	
+	private static final int TASK_SIZE = 16; // levels solved sequentially by a single task, smaller ranges are not split
+	private static final long DEFAULT_TIMEOUT = 10000;
+	
+	private static final AtomicInteger SOLVABLE = new AtomicInteger();
+	private static final AtomicInteger UNIQUE = new AtomicInteger();
+	private static final TranspositionTable TABLE = new TranspositionTable(18); // 8 MB
+	
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File levelsFile = args.length > 0 ? new File(args[0]) : GameController.findLevelsFile();
+		File reportFile = new File(args.length > 1 ? args[1] : "report.csv");
+		long timeout = args.length > 2 ? Long.parseLong(args[2]) : Validator.DEFAULT_TIMEOUT;
+		
+		if (levelsFile == null || !levelsFile.isFile()) {
+			System.out.println("No levels file found");
+			return;
+		}
+		
+		LevelLibrary levels = new LevelLibrary(levelsFile);
+		
+		ForkJoinPool pool = new ForkJoinPool();
+		BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+		
+		long start = System.nanoTime();
+		pool.execute(new ValidationTask(levels, 0, levels.size(), timeout, results));
+		
+		try (BufferedWriter writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.ISO_8859_1)) {
+			writer.write("id,size,status,solvable,unique,solutions,time_ms,nodes" + System.lineSeparator());
+			
+			for (int k = 0; k < levels.size(); k++) {
+				writer.write(results.take() + System.lineSeparator());
+			}
+		}
+		
+		pool.shutdown();
+		
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%d levels validated in %.2f s (%.1f levels/s) on %d threads : %d solvable, %d unique", levels.size(), seconds, levels.size() / seconds, pool.getParallelism(), Validator.SOLVABLE.get(), Validator.UNIQUE.get()));
+		System.out.println(String.format("Transposition table : %.1f %% hits, %d states stored", 100 * Validator.TABLE.getHitRate(), Validator.TABLE.getStores()));
+		System.out.println("Report written to " + reportFile.getPath());
+	}
+	
+	/**
+	 * Task validating a range of levels, split in halves so idle threads can steal work
+	 */
+	private static class ValidationTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 5180564232851937617L;
+		
+		private final LevelLibrary levels;
+		private final int from;
+		private final int to;
+		private final long timeout;
+		private final BlockingQueue<String> results;
+		public ValidationTask(LevelLibrary levels, int from, int to, long timeout, BlockingQueue<String> results) {
+			this.levels = levels;
+			this.from = from;
+			this.to = to;
+			this.timeout = timeout;
+			this.results = results;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > Validator.TASK_SIZE) {
+				int middle = (this.from + this.to) >>> 1;
+				RecursiveAction.invokeAll(new ValidationTask(this.levels, this.from, middle, this.timeout, this.results), new ValidationTask(this.levels, middle, this.to, this.timeout, this.results));
+				return;
+			}
+			
+			for (int id = this.from; id < this.to; id++) {
+				String result;
+				try {
+					
+					Solver solver = new Solver(this.levels.getParameter(id));
+					solver.setTimeout(this.timeout);
+					solver.setTable(Validator.TABLE);
+					Solution solution = solver.count(2);
+					if (solution.isSolved()) Validator.SOLVABLE.incrementAndGet();
+					if (solution.isUnique()) Validator.UNIQUE.incrementAndGet();
+					
+					result = String.format(Locale.ROOT, "%d,%d,%s,%b,%b,%d,%.3f,%d", id + 1, this.levels.getSquareLength(id), solution.getStatus(), solution.isSolved(), solution.isUnique(), solution.getCount(), solution.getTime() / 1e6, solution.getNodes());
+					
+				} catch (RuntimeException e) {
+					result = String.format(Locale.ROOT, "%d,,ERROR,false,false,0,0,0", id + 1);
+				}
+				
+				this.results.add(result);
+			}
+		}
+		
+	}
+
+}
@@ -0,0 +1,77 @@
+package game.controls;
+
+/**
+ * Immutable input, or task, queued by the Swing thread for the game logic thread (see GameLoop)
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public final class Command {
+
+	public enum Type {
+		PRESS, DRAG, KEY, WHEEL, TASK;
+	}
+
+	private final Type type;
+	private final int x; // in pixels, or the key code, or the scrolled units
+	private final int y; // in pixels
+	private final Runnable task;
+
+	private Command(Type type, int x, int y, Runnable task) {
+		this.type = type;
+		this.x = x;
+		this.y = y;
+		this.task = task;
+	}
+
+	public static Command press(int x, int y) {
+		return new Command(Type.PRESS, x, y, null);
+	}
+
+	public static Command drag(int x, int y) {
+		return new Command(Type.DRAG, x, y, null);
+	}
+
+	public static Command key(int keyCode) {
+		return new Command(Type.KEY, keyCode, 0, null);
+	}
+
+	public static Command wheel(int units) {
+		return new Command(Type.WHEEL, units, 0, null);
+	}
+
+	/**
+	 * @param task work that must touch the game state, such as storing the result of a background analysis
+	 * @return the command
+	 */
+	public static Command task(Runnable task) {
+		return new Command(Type.TASK, 0, 0, task);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getKeyCode() {
+		return x;
+	}
+
+	public int getUnits() {
+		return x;
+	}
+
+	public Runnable getTask() {
+		return task;
+	}
+
+}
@@ -1,21 +1,29 @@
 package game.controls;
 
-import java.io.BufferedWriter;
+import java.awt.event.KeyEvent;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.FileSystems;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Scanner;
+import java.util.BitSet;
+import java.util.concurrent.Executor;
+
+import javax.swing.SwingUtilities;
 
 import game.models.Case;
 import game.models.Level;
+import game.models.LevelLibrary;
 import game.models.Line;
 import game.models.LineColor;
+import game.solver.Analyzer;
+import game.solver.Connectivity;
+import game.solver.Hint;
+import game.solver.Propagator;
+import game.solver.Solution;
+import game.solver.SolutionCache;
+import game.solver.Solution.Status;
+import game.solver.Solver;
+import game.solver.TranspositionTable;
 
 /**
  * Class controlling data flow between game objects and window, panel
@@ -27,6 +35,8 @@ import game.models.LineColor;
  */
 public class GameController {
 	
+	public static final long HINT_BUDGET = 16; // in milliseconds, a frame at 60 Hz
+	
 	public enum GameState {
 		MAIN_MENU, LEVEL, LEVEL_FINISHED, LEVEL_ADD;
 	}
@@ -34,13 +44,31 @@ public class GameController {
 	private String levelsPath;
 
 	private GameState state;
-	private final List<Level> levels;
+	private final LevelLibrary levels;
+	private final Analyzer analyzer = new Analyzer();
+	private final SolutionCache solutions; // solutions found in this run and the previous ones
 	private int levelId = -1;
 	private int pageId = 0;
 	private Case selection;
+	private Solution hintSolution; // solution found by the last hint search, still valid while the player follows it
+	private final TranspositionTable hintTable = new TranspositionTable(14); // dead ends found by earlier hint searches, 512 KB
+	private final Connectivity connectivity = new Connectivity(); // dead ends of the current lines, shown while playing
+	private Executor executor = SwingUtilities::invokeLater; // runs tasks on the thread writing the game state
+	private volatile Snapshot snapshot; // last state published for the panel
 	public GameController(GameState state) {
 		this.state = state;
 		this.levels = this.getLevelsData();
+		this.solutions = this.getSolutionsData();
+	}
+	
+	/**
+	 * @param state
+	 * @param levels levels to play instead of the ones of levels.txt
+	 */
+	public GameController(GameState state, LevelLibrary levels) {
+		this.state = state;
+		this.levels = levels;
+		this.solutions = new SolutionCache();
 	}
 
 	public Level getLevel() {
@@ -55,6 +83,10 @@ public class GameController {
 	}
 
 	public void setSelection(Case selection) {
+		Level level = this.getLevel();
+		if (level != null && this.selection != null && this.selection.getLevel() == level) level.markChanged(level.getIndex(this.selection));
+		if (level != null && selection != null) level.markChanged(level.getIndex(selection));
+		
 		this.selection = selection;
 	}
 	
@@ -91,9 +123,9 @@ public class GameController {
 				this.getLevel().getLineColors().put(lineColor.toString().charAt(0), lineColor);
 				next.setLineColor(lineColor);
 				Line line = new Line(lineColor);
-				this.getLevel().getLines().put(lineColor, line);
+				this.getLevel().addLine(line);
 				line.add(next);
-			}
+			} else next = null; // no color left, an empty case without line cannot be drawn from
 		}
 		
 		this.setSelection(next);
@@ -113,7 +145,7 @@ public class GameController {
 		}
 		
 		if (!next.hasLine()) current.add(next);
-		if (next.isExtremite() && !next.equals(current.getCases().get(0))) this.setSelection(null); // if we have finished drawing the currently selected line
+		if (next.isExtremite() && !next.equals(current.getFirst())) this.setSelection(null); // if we have finished drawing the currently selected line
 		else this.setSelection(next);
 	}
 	
@@ -127,12 +159,21 @@ public class GameController {
 			this.draw(next);
 		}
 		
+		this.updateLevel();
+	}
+	
+	/**
+	 * Ends the level once its lines are finished, then updates its status and dead ends
+	 */
+	private void updateLevel() {
+		boolean creation = this.getState().equals(GameState.LEVEL_ADD);
+		
 		if (this.getLevel().isFinished()) {
 			if(creation) {
 				for (Line line : this.getLevel().getLines().values()) {
-					if (line.getCases().size() > 1) {
-						line.getCases().get(0).setLineColor(line.getLineColor());
-						line.getCases().get(line.getCases().size() - 1).setLineColor(line.getLineColor());
+					if (line.size() > 1) {
+						line.getFirst().setLineColor(line.getLineColor());
+						line.getLast().setLineColor(line.getLineColor());
 					}
 				}
 			}
@@ -141,6 +182,251 @@ public class GameController {
 			if (creation) this.saveLevelsData();
 			this.setState(GameState.LEVEL_FINISHED);
 		}
+		
+		this.getLevels().updateStatus(this.getLevelId());
+		this.updateConnectivity();
+	}
+	
+	/**
+	 * Draws every forced move of the current lines at once (see Propagator), as a single move of the history
+	 * @return false if the current lines were found to lead to a dead end
+	 */
+	public boolean propagate() {
+		Level level = this.getLevel();
+		int drawn = new Propagator(level).run();
+		
+		// the selected line goes on from its new end
+		Case selection = this.getSelection();
+		if (selection != null && selection.hasLine() && selection.getLine().getLast() != selection) {
+			Line line = selection.getLine();
+			this.setSelection(line.isConnected() ? null : line.getLast());
+		}
+		
+		this.updateLevel();
+		return drawn >= 0;
+	}
+	
+	/**
+	 * Looks for dead ends of the current lines, only while playing a level : the changed cases are enough to update them
+	 */
+	private void updateConnectivity() {
+		if (this.getState().equals(GameState.LEVEL) && this.getLevel() != null) this.connectivity.update(this.getLevel());
+	}
+	
+	/**
+	 * Draws the selected line to a case through the cases in between, which a fast mouse drag skips
+	 * Each step goes along the axis the case is the furthest on, so the line stays close to the straight way.
+	 * Drawing stops as soon as a step is refused, or once the line reaches its other node.
+	 * @param target
+	 */
+	public void drag(Case target) {
+		Level level = this.getLevel();
+		
+		while (this.getSelection() != null && !this.getSelection().equals(target) && (this.getState().equals(GameState.LEVEL) || this.getState().equals(GameState.LEVEL_ADD))) {
+			Case prev = this.getSelection();
+			int dy = target.getY() - prev.getY();
+			int dx = target.getX() - prev.getX();
+			
+			Case next = Math.abs(dy) >= Math.abs(dx) ? level.getCase(prev.getY() + Integer.signum(dy), prev.getX()) : level.getCase(prev.getY(), prev.getX() + Integer.signum(dx));
+			this.action(false, next);
+			if (this.getSelection() != next) break;
+		}
+		
+		this.commit();
+	}
+	
+	/**
+	 * Ends the current move of the level history, so it can be undone on its own
+	 */
+	private void commit() {
+		Level level = this.getLevel();
+		if (level != null) level.getHistory().commit(this.getSelectionIndex());
+	}
+	
+	/**
+	 * @return the index of the selected case in the current level, -1 if none
+	 */
+	private int getSelectionIndex() {
+		Level level = this.getLevel();
+		return level != null && this.getSelection() != null && this.getSelection().getLevel() == level ? level.getIndex(this.getSelection()) : -1;
+	}
+	
+	/**
+	 * Takes back the last move of the current level
+	 * @return false if there is no move to undo
+	 */
+	public boolean undo() {
+		return this.restore(this.getLevel().getHistory().undo(this.getSelectionIndex()));
+	}
+	
+	/**
+	 * Plays again the last move undone
+	 * @return false if there is no move to redo
+	 */
+	public boolean redo() {
+		return this.restore(this.getLevel().getHistory().redo(this.getSelectionIndex()));
+	}
+	
+	/**
+	 * @param selection index of the case selected once a move is undone or redone, -1 if none, -2 if there was no move
+	 * @return false if there was no move
+	 */
+	private boolean restore(int selection) {
+		if (selection == -2) return false;
+		
+		this.setSelection(selection >= 0 ? this.getLevel().getCase(selection) : null);
+		this.getLevels().updateStatus(this.getLevelId());
+		this.updateConnectivity();
+		return true;
+	}
+	
+	/**
+	 * Handles a click in a level
+	 * @param next clicked case, null if the click is not on a case
+	 */
+	public void click(Case next) {
+		switch (this.getState()) {
+		case LEVEL: case LEVEL_ADD:
+			if (next != null) this.action(true, next);
+			this.commit();
+			break;
+		case LEVEL_FINISHED:
+			this.setState(GameState.MAIN_MENU);
+			break;
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Handles a key pressed : page change in the main menu, moves, hints, forced moves, undo and redo in a level
+	 * @param keyCode (see KeyEvent)
+	 * @return false if a hint or the forced moves were asked while current lines lead to a dead end, or if there is no move to undo or redo
+	 */
+	public boolean keyPressed(int keyCode) {
+		switch(this.getState()) {
+		case MAIN_MENU:
+			switch (keyCode) {
+			case KeyEvent.VK_Q: case KeyEvent.VK_LEFT:
+				this.setPageId(this.getPageId() - 1);
+				break;
+			case KeyEvent.VK_D: case KeyEvent.VK_RIGHT:
+				this.setPageId(this.getPageId() + 1);
+				break;
+			default:
+				break;
+			}
+			break;
+		case LEVEL: case LEVEL_ADD:
+			if (keyCode == KeyEvent.VK_ESCAPE) this.setState(GameState.MAIN_MENU);
+			if (keyCode == KeyEvent.VK_H && this.getState().equals(GameState.LEVEL)) {
+				return !this.playHint().getStatus().equals(Status.UNSOLVABLE);
+			}
+			if (keyCode == KeyEvent.VK_U) return this.undo();
+			if (keyCode == KeyEvent.VK_R) return this.redo();
+			if (keyCode == KeyEvent.VK_F && this.getState().equals(GameState.LEVEL)) {
+				boolean propagated = this.propagate();
+				this.commit();
+				return propagated;
+			}
+			
+			Case prev = this.getSelection();
+			if (prev != null) {
+				Case next = null;
+				switch (keyCode) {
+				case KeyEvent.VK_Z: case KeyEvent.VK_UP:
+					next = this.getLevel().getCase(prev.getY() - 1, prev.getX());
+					break;
+				case KeyEvent.VK_Q: case KeyEvent.VK_LEFT:
+					next = this.getLevel().getCase(prev.getY(), prev.getX() - 1);
+					break;
+				case KeyEvent.VK_S: case KeyEvent.VK_DOWN:
+					next = this.getLevel().getCase(prev.getY() + 1, prev.getX());
+					break;
+				case KeyEvent.VK_D: case KeyEvent.VK_RIGHT:
+					next = this.getLevel().getCase(prev.getY(), prev.getX() + 1);
+					break;
+				case KeyEvent.VK_ENTER: case KeyEvent.VK_SPACE:
+					next = this.getLevel().getCase(prev.getY(), prev.getX());
+					break;
+				default:
+					break;
+				}
+				if (next != null) this.action(false, next);
+			}
+			this.commit();
+			break;
+		case LEVEL_FINISHED:
+			if (keyCode == KeyEvent.VK_ENTER || keyCode == KeyEvent.VK_SPACE) {
+				this.setState(GameState.MAIN_MENU);
+			}
+			break;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Finds the next correct move from the current lines, in at most HINT_BUDGET milliseconds
+	 * Solutions already known for the level are tried first : the one of its analysis, then the one of the last hint or of the cache.
+	 * Otherwise the Solver keeps the current lines as they are and only searches the cases they leave free.
+	 * @return the hint, with a move of the selected line if it has one
+	 */
+	public Hint hint() {
+		Level level = this.getLevel();
+		LineColor preferred = this.getSelection() != null && this.getSelection().hasLine() ? this.getSelection().getLine().getLineColor() : null;
+		
+		Solution analysis = this.getAnalyzer().getSolution(level.getParameter());
+		if (analysis != null && analysis.getStatus().equals(Status.UNSOLVABLE)) return new Hint(Status.UNSOLVABLE);
+		
+		for (Solution solution : new Solution[] { analysis, this.hintSolution }) {
+			if (solution == null || !solution.isSolved()) continue;
+			
+			Hint hint = Hint.follow(level, solution, preferred);
+			if (hint != null) return hint;
+			if (solution == analysis && analysis.isUnique()) return new Hint(Status.UNSOLVABLE); // lines straying from the only solution lead nowhere
+		}
+		
+		Solver solver = new Solver(level);
+		solver.setTimeout(GameController.HINT_BUDGET);
+		solver.setTable(this.hintTable);
+		for (Line line : level.getLines().values()) {
+			if (!solver.addPrefix(line)) return new Hint(Status.UNSOLVABLE);
+		}
+		
+		Solution solution = solver.solve();
+		if (!solution.isSolved()) return new Hint(solution.getStatus());
+		
+		this.hintSolution = solution;
+		this.getSolutions().put(level.getParameter(), solution);
+		return Hint.follow(level, solution, preferred);
+	}
+	
+	/**
+	 * Plays the next correct move, if there is one
+	 * @return the hint played
+	 */
+	public Hint playHint() {
+		Hint hint = this.hint();
+		
+		if (hint.hasMove()) {
+			this.select(this.getLevel().getCase(hint.getFrom()));
+			this.action(false, this.getLevel().getCase(hint.getTo()));
+			this.commit();
+		}
+		
+		return hint;
+	}
+	
+	/**
+	 * @return indices of the cases of the current level touched since the last clearChanges()
+	 */
+	public BitSet getChanges() {
+		return this.getLevel() != null ? this.getLevel().getChanges() : new BitSet();
+	}
+	
+	public void clearChanges() {
+		if (this.getLevel() != null) this.getLevel().clearChanges();
 	}
 	
 	public Case getCase(int x, int y) {
@@ -158,96 +444,138 @@ public class GameController {
 		int i = (y - 3 - GamePanel.MENU_Y_OFFSET - GamePanel.MENU_Y_SPACE / 4) / GamePanel.MENU_Y_SPACE;
 		int j = (x - 32) / GamePanel.MENU_X_SPACE;
 		this.setLevelId(i * GamePanel.MENU_X_LENGTH + j + this.getPageId() * GamePanel.MENU_X_LENGTH * GamePanel.MENU_Y_LENGTH);
-		if (i >= 0 && j >= 0 && y >= GamePanel.MENU_Y_OFFSET * 1.1) {
-			if (this.getLevelId() == this.getLevels().size()) this.getLevels().add(new Level(5));
+		if (i >= 0 && j >= 0 && y >= GamePanel.MENU_Y_OFFSET * 1.1) this.openLevel(this.getLevelId());
+	}
+	
+	/**
+	 * Opens a level, a new level is created if levelId follows the last one
+	 * @param levelId
+	 */
+	public void openLevel(int levelId) {
+		this.setLevelId(levelId);
+		if (this.getLevelId() == this.getLevels().size()) this.getLevels().add(new Level(5));
 
-			if (this.getLevel() != null) {
-				this.setSelection(null);
-				if (this.getLevel().isFinished()) this.getLevel().fill();
-				
-				if (this.getLevel().isInCreation()) this.setState(GameState.LEVEL_ADD);
-				else this.setState(GameState.LEVEL);
-			}
+		if (this.getLevel() != null) {
+			this.setSelection(null);
+			if (this.getLevel().isFinished()) this.getLevel().fill();
+			this.getLevels().updateStatus(this.getLevelId());
+			
+			if (this.getLevel().isInCreation()) this.setState(GameState.LEVEL_ADD);
+			else this.setState(GameState.LEVEL);
+			
+			if (this.hintSolution == null && !this.getLevel().isInCreation()) this.hintSolution = this.getSolutions().get(this.getLevel());
+			this.updateConnectivity();
 		}
 	}
 	
 	/**
-	 * Retrieve levels data from ./levels.txt
+	 * @param id
+	 * @return the difficulty of the level (see Analyzer), UNKNOWN until its analysis in the background is done
 	 */
-	public List<Level> getLevelsData() {
-		List<Level> levels = new ArrayList<Level>();
+	public int getDifficulty(int id) {
+		int difficulty = this.getLevels().getDifficulty(id);
+		if (difficulty != Analyzer.UNKNOWN || this.getLevels().isPending(id)) return difficulty;
 		
-		String separator = FileSystems.getDefault().getSeparator();
+		String parameter = this.getLevels().getParameter(id);
+		this.getAnalyzer().analyzeLater(parameter, solution -> {
+			this.getSolutions().put(parameter, solution);
+			this.getExecutor().execute(() -> {
+				// ids move when a created level is saved, the level may not be at id anymore
+				if (id < this.getLevels().size() && this.getLevels().getParameter(id).equals(parameter)) {
+					this.getLevels().setDifficulty(id, Analyzer.getDifficulty(solution));
+				}
+			});
+		});
 		
-		String executionPath = "";
+		return difficulty;
+	}
+	
+	/**
+	 * Publishes the current state for the panel, then forgets the changed cases it holds
+	 * @return the published snapshot
+	 */
+	public Snapshot publish() {
+		this.snapshot = new Snapshot(this, this.snapshot);
+		this.clearChanges();
+		return this.snapshot;
+	}
+	
+	/**
+	 * @return the last published state, can be read from any thread
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	/**
+	 * Index levels data from ./levels.txt, levels are only loaded when they are opened
+	 */
+	public LevelLibrary getLevelsData() {
+		File file = GameController.findLevelsFile();
 		
-		try {
+		if (file != null) {
 			
-			executionPath = new File(this.getClass().getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+			try {
+				
+				LevelLibrary levels = new LevelLibrary(file);
+				this.setLevelsPath(file.getPath());
+				if (levels.getDuplicateCount() > 0) System.out.println(String.format("%d levels of %s are rotations, reflections or recolorings of a level before them", levels.getDuplicateCount(), file.getPath()));
+				return levels;
+				
+			} catch (IOException e) {
+			}
 			
-		} catch (URISyntaxException e) {
 		}
-
-		Scanner scanner = null;
 		
-		try {
-
-			this.levelsPath = executionPath + separator + ".." + separator + "levels.txt";
-			scanner = new Scanner(new File(this.getLevelsPath()));
-			
-		} catch (FileNotFoundException e) {
+		this.setLevelsPath(null);
+		return new LevelLibrary();
+	}
+	
+	/**
+	 * Opens the solutions file next to the levels file, solutions are only kept in memory if there is none or it cannot be read
+	 */
+	public SolutionCache getSolutionsData() {
+		if (this.getLevelsPath() != null) {
 			
 			try {
-
-				this.levelsPath = executionPath + separator + ".." + separator + "src" + separator + "levels.txt";
-				scanner = new Scanner(new File(this.getLevelsPath()));
-				
-			} catch (FileNotFoundException e1) {
 				
-				this.setLevelsPath(null);
+				return new SolutionCache(new File(this.getLevelsPath() + ".solutions"));
 				
+			} catch (IOException e) {
 			}
 			
 		}
 		
-		if (scanner != null) {
-
-			while (scanner.hasNextLine()) {
-				String line = scanner.nextLine();
-				if (line.length() > 0) levels.add(new Level(line));
-			}
+		return new SolutionCache();
+	}
+	
+	/**
+	 * Looks for levels.txt next to the execution path, then in the src folder
+	 * @return the levels file, null if none was found
+	 */
+	public static File findLevelsFile() {
+		String separator = FileSystems.getDefault().getSeparator();
+		
+		String executionPath = "";
+		
+		try {
+			
+			executionPath = new File(GameController.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
 			
+		} catch (URISyntaxException e) {
 		}
 		
-		return levels;
+		File file = new File(executionPath + separator + ".." + separator + "levels.txt");
+		if (!file.isFile()) file = new File(executionPath + separator + ".." + separator + "src" + separator + "levels.txt");
+		
+		return file.isFile() ? file : null;
 	}
 	
+	/**
+	 * Saves the current level once created, the write itself happens in the background
+	 */
 	public void saveLevelsData() {
-		if (this.getLevelsPath() != null) {
-
-			BufferedWriter writer = null;
-			
-	        try {
-
-	            writer = new BufferedWriter(new FileWriter(new File(this.getLevelsPath())));
-	            
-	            this.getLevels().sort(Comparator.comparing(Level::getSquareLength));	            
-	            for (Level level : this.getLevels()) {
-	            	writer.write(level.getParameter() + System.lineSeparator());
-	            }
-	            
-	        } catch (Exception e) {
-	        } finally {
-	        	
-                try {
-                	
-					if (writer != null) writer.close();
-					
-				} catch (IOException e) {
-				}
-                
-	        }
-		}
+		this.setLevelId(this.getLevels().save(this.getLevelId()));
 	}
 
 	public GameState getState() {
@@ -258,15 +586,39 @@ public class GameController {
 		this.state = state;
 	}
 
-	public List<Level> getLevels() {
+	public LevelLibrary getLevels() {
 		return levels;
 	}
 
+	public Analyzer getAnalyzer() {
+		return analyzer;
+	}
+
+	public SolutionCache getSolutions() {
+		return solutions;
+	}
+
+	public Connectivity getConnectivity() {
+		return connectivity;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @param executor runs tasks on the thread writing the game state, the Swing thread by default
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
 	public int getLevelId() {
 		return levelId;
 	}
 
 	protected void setLevelId(int levelId) {
+		if (levelId != this.levelId) this.hintSolution = null;
 		this.levelId = levelId;
 	}
 
@@ -0,0 +1,161 @@
+package game.controls;
+
+import java.awt.Toolkit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import game.controls.Command.Type;
+import game.controls.GameController.GameState;
+import game.models.Case;
+
+/**
+ * Single thread writing the game state : the Swing thread only queues commands, this thread applies them to the controller
+ * then publishes a Snapshot the panel draws without locking, so solving, saving or analyzing levels never freezes the window
+ *
+ * Commands queued while a batch was applied are handled together and followed by a single repaint,
+ * consecutive drags are coalesced into the last one.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class GameLoop implements Runnable {
+
+	private final GameController controller;
+	private final GamePanel panel;
+	private final BlockingQueue<Command> commands = new LinkedBlockingQueue<Command>();
+	private final List<Command> batch = new ArrayList<Command>();
+	private final Thread thread;
+	private volatile Trace trace; // records inputs when not null
+
+	public GameLoop(GameController controller, GamePanel panel) {
+		this.controller = controller;
+		this.panel = panel;
+
+		controller.setExecutor(task -> this.post(Command.task(task)));
+		controller.publish();
+
+		this.thread = new Thread(this, "Game logic");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Queues a command, can be called from any thread
+	 * @param command
+	 */
+	public void post(Command command) {
+		this.commands.add(command);
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+
+				this.batch.add(this.commands.take());
+
+			} catch (InterruptedException e) {
+				return;
+			}
+			this.commands.drainTo(this.batch);
+
+			Snapshot previous = this.getController().getSnapshot();
+			for (int k = 0; k < this.batch.size(); k++) {
+				Command command = this.batch.get(k);
+				if (command.getType().equals(Type.DRAG) && k + 1 < this.batch.size() && this.batch.get(k + 1).getType().equals(Type.DRAG)) continue; // drag draws every case up to the last position anyway
+
+				try {
+
+					this.apply(command);
+
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+			this.batch.clear();
+
+			this.refresh(previous, this.getController().publish());
+		}
+	}
+
+	/**
+	 * Applies an input to the game
+	 * @param command
+	 */
+	private void apply(Command command) {
+		GameController controller = this.getController();
+		GameState state = controller.getState();
+		boolean playing = state.equals(GameState.LEVEL) || state.equals(GameState.LEVEL_ADD);
+
+		switch (command.getType()) {
+		case PRESS:
+			if (state.equals(GameState.MAIN_MENU)) {
+				controller.selectLevel(command.getX(), command.getY());
+				if (this.getTrace() != null && !controller.getState().equals(GameState.MAIN_MENU)) this.getTrace().level(controller.getLevel());
+			} else {
+				Case next = playing ? controller.getCase(command.getX(), command.getY()) : null;
+				if (this.getTrace() != null) this.getTrace().select(next);
+				controller.click(next);
+			}
+			break;
+		case DRAG:
+			if (!playing || controller.getSelection() == null) break;
+
+			Case target = controller.getCase(command.getX(), command.getY());
+			if (target == null || target.equals(controller.getSelection())) break;
+
+			if (this.getTrace() != null) this.getTrace().draw(target);
+			controller.drag(target);
+			break;
+		case KEY:
+			if (this.getTrace() != null && !state.equals(GameState.MAIN_MENU)) this.getTrace().key(command.getKeyCode());
+			if (!controller.keyPressed(command.getKeyCode())) Toolkit.getDefaultToolkit().beep(); // dead end, or no move to undo or redo
+			break;
+		case WHEEL:
+			if (state.equals(GameState.LEVEL_ADD)) {
+				if (command.getUnits() > 0) controller.getLevel().dezoom();
+				else controller.getLevel().zoom();
+			} else if (state.equals(GameState.MAIN_MENU)) {
+				controller.setPageId(controller.getPageId() + (command.getUnits() > 0 ? 1 : -1));
+			}
+			break;
+		case TASK:
+			command.getTask().run();
+			break;
+		}
+	}
+
+	/**
+	 * Repaints only the cases changed since the previous snapshot when the same board is still displayed, the whole panel otherwise
+	 * @param previous
+	 * @param snapshot
+	 */
+	private void refresh(Snapshot previous, Snapshot snapshot) {
+		if (snapshot.isSameBoard(previous)) {
+			this.getPanel().repaintCases(snapshot);
+		} else {
+			this.getPanel().repaint();
+		}
+	}
+
+	public GameController getController() {
+		return controller;
+	}
+
+	public GamePanel getPanel() {
+		return panel;
+	}
+
+	public Trace getTrace() {
+		return trace;
+	}
+
+	public void setTrace(Trace trace) {
+		this.trace = trace;
+	}
+
+}
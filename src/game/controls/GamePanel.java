@@ -3,13 +3,19 @@ package game.controls;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
 
 import javax.swing.JPanel;
 
-import game.models.Case;
-import game.models.Line;
+import game.models.Level;
+import game.models.LevelLibrary;
+import game.models.LineColor;
 
 /**
  * Class displaying game state
@@ -30,11 +36,18 @@ public class GamePanel extends JPanel implements ComponentListener {
 	public static int MENU_X_SPACE = (GameWindow.WINDOW_LENGTH - 2 * GamePanel.MENU_X_MARGIN) / GamePanel.MENU_X_LENGTH;
 	public static int MENU_Y_SPACE = (GameWindow.WINDOW_LENGTH - GamePanel.MENU_Y_OFFSET) / GamePanel.MENU_Y_LENGTH;
 	
+	// size labels of the menu, by square length
+	private static final String[] SIZES = new String[Level.MAX_SQUARE_LENGTH + 1];
+	static {
+		for (int length = 0; length < GamePanel.SIZES.length; length++) GamePanel.SIZES[length] = length + "x" + length;
+	}
+	
 	public static final Color BACKGROUND_COLOR = new Color(46, 49, 49);
 	public static final Color SELECT_COLOR = new Color(58, 61, 61);
 	public static final Color FINISHED_COLOR = new Color(0, 177, 106);
 	public static final Color UNFINISHED_COLOR = new Color(249, 105, 14);
 	public static final Color WHITE = new Color(255, 255, 255);
+	public static final Color DEAD_END_COLOR = new Color(96, 36, 36);
 	
 	/**
 	 * 
@@ -42,6 +55,20 @@ public class GamePanel extends JPanel implements ComponentListener {
 	private static final long serialVersionUID = -4433010075620700221L;
 	private final GameController controleur;
 	
+	// fonts of the current window length
+	private int fontLength = -1;
+	private Font titleFont;
+	private Font menuFont;
+	private Font addFont;
+	private Font textFont;
+	private Font smallFont;
+	
+	// cached static layer of the current level and the state it was drawn for
+	private BufferedImage boardLayer;
+	private byte[] boardNodes; // nodes of the snapshot the layer was drawn for, shared by snapshots until the board changes
+	private int boardLength;
+	private double boardScale;
+	
 	public GamePanel(GameController controleur) {
 		this.controleur = controleur;
 	}
@@ -56,126 +83,248 @@ public class GamePanel extends JPanel implements ComponentListener {
 		g.setColor(GamePanel.BACKGROUND_COLOR);
 		g.fillRect(0, 0, GameWindow.WINDOW_LENGTH, GameWindow.WINDOW_LENGTH);
 		
-		switch (this.getController().getState()) {
+		Snapshot snapshot = this.getController().getSnapshot(); // read once, the game logic thread may publish another one meanwhile
+		if (snapshot == null) return;
+		
+		switch (snapshot.getState()) {
 		case MAIN_MENU:
+			this.updateFonts();
+			
 			// Title
 			g.setColor(GamePanel.WHITE);
-			g.setFont(new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 9));
+			g.setFont(this.titleFont);
 			g.drawString("Free Flow Game", GameWindow.WINDOW_LENGTH / 9, GameWindow.WINDOW_LENGTH / 5);
 
 			// Pages
-			g.setFont(new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 30));
-			g.drawString("PAGE " + String.valueOf(this.getController().getPageId() + 1), 27 * GameWindow.WINDOW_LENGTH / 60, 4 * GameWindow.WINDOW_LENGTH / 15);
-			if (this.getController().getPageId() < this.getController().getMaxPageId()) g.drawString(">", 35 * GameWindow.WINDOW_LENGTH / 60, 4 * GameWindow.WINDOW_LENGTH / 15);
-			if (this.getController().getPageId() > 0) g.drawString("<", 24 * GameWindow.WINDOW_LENGTH / 60, 4 * GameWindow.WINDOW_LENGTH / 15);
+			g.setFont(this.textFont);
+			g.drawString("PAGE " + String.valueOf(snapshot.getPageId() + 1), 27 * GameWindow.WINDOW_LENGTH / 60, 4 * GameWindow.WINDOW_LENGTH / 15);
+			if (snapshot.getPageId() < snapshot.getMaxPageId()) g.drawString(">", 35 * GameWindow.WINDOW_LENGTH / 60, 4 * GameWindow.WINDOW_LENGTH / 15);
+			if (snapshot.getPageId() > 0) g.drawString("<", 24 * GameWindow.WINDOW_LENGTH / 60, 4 * GameWindow.WINDOW_LENGTH / 15);
 			
-			// Levels
-			int offsetId = this.getController().getPageId() * GamePanel.MENU_X_LENGTH * GamePanel.MENU_Y_LENGTH;
-			for (int i = 0; i <= this.getController().getLevels().size() / GamePanel.MENU_X_LENGTH; i++) {
-				for (int j = 0; j < Math.min(this.getController().getLevels().size() - i * GamePanel.MENU_X_LENGTH - offsetId, GamePanel.MENU_X_LENGTH); j++) {
-					int levelId = i * GamePanel.MENU_X_LENGTH + j + offsetId;
-					
-					// Level backgrounds
-					if (this.getController().getLevels().get(levelId).isFinished()) g.setColor(GamePanel.FINISHED_COLOR);
-					else if (this.getController().getLevels().get(levelId).isUnfinished()) g.setColor(GamePanel.UNFINISHED_COLOR);
-					else g.setColor(GamePanel.SELECT_COLOR);
-					g.fillOval(j * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 4 + GamePanel.MENU_X_MARGIN, i * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 4 + GamePanel.MENU_Y_OFFSET, GamePanel.MENU_X_SPACE / 2, GamePanel.MENU_X_SPACE / 2);
-					
-					g.setColor(GamePanel.WHITE);
-					g.setFont(new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 30));
-					
-					// Level icon
-					g.drawOval(j * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 4 + GamePanel.MENU_X_MARGIN, i * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 4 + GamePanel.MENU_Y_OFFSET, GamePanel.MENU_X_SPACE / 2, GamePanel.MENU_X_SPACE / 2);
-					String number = String.valueOf(levelId + 1);
-					g.drawString(number, j * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 2 - number.length() * GamePanel.MENU_X_SPACE / 21 + GamePanel.MENU_X_MARGIN, i * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 2 + GamePanel.MENU_Y_SPACE / 15 + GamePanel.MENU_Y_OFFSET);
+			// Levels, only the ones of the current page
+			int offsetId = snapshot.getPageId() * GamePanel.MENU_X_LENGTH * GamePanel.MENU_Y_LENGTH;
+			int count = snapshot.getPageCount();
+			for (int k = 0; k < count; k++) {
+				int i = k / GamePanel.MENU_X_LENGTH;
+				int j = k % GamePanel.MENU_X_LENGTH;
+				int levelId = k + offsetId;
+				
+				// Level backgrounds
+				byte status = snapshot.getStatus(k);
+				if (status == LevelLibrary.STATUS_FINISHED) g.setColor(GamePanel.FINISHED_COLOR);
+				else if (status == LevelLibrary.STATUS_UNFINISHED) g.setColor(GamePanel.UNFINISHED_COLOR);
+				else g.setColor(GamePanel.SELECT_COLOR);
+				g.fillOval(j * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 4 + GamePanel.MENU_X_MARGIN, i * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 4 + GamePanel.MENU_Y_OFFSET, GamePanel.MENU_X_SPACE / 2, GamePanel.MENU_X_SPACE / 2);
+				
+				g.setColor(GamePanel.WHITE);
+				g.setFont(this.textFont);
+				
+				// Level icon
+				g.drawOval(j * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 4 + GamePanel.MENU_X_MARGIN, i * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 4 + GamePanel.MENU_Y_OFFSET, GamePanel.MENU_X_SPACE / 2, GamePanel.MENU_X_SPACE / 2);
+				String number = String.valueOf(levelId + 1);
+				g.drawString(number, j * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 2 - number.length() * GamePanel.MENU_X_SPACE / 21 + GamePanel.MENU_X_MARGIN, i * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 2 + GamePanel.MENU_Y_SPACE / 15 + GamePanel.MENU_Y_OFFSET);
 
-					// Level size
-					String length = String.valueOf(this.getController().getLevels().get(levelId).getSquareLength());
-					String size = length + "x" + length;
-					g.setFont(new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 60));
-					g.drawString(size, j * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 2 - size.length() * GamePanel.MENU_X_SPACE / 41 + GamePanel.MENU_X_MARGIN, i * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 2 + GamePanel.MENU_Y_SPACE / 6 + GamePanel.MENU_Y_OFFSET);
-					
-				}
+				// Level size
+				String size = GamePanel.SIZES[Math.min(snapshot.getSquareLength(k), GamePanel.SIZES.length - 1)];
+				g.setFont(this.smallFont);
+				g.drawString(size, j * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 2 - size.length() * GamePanel.MENU_X_SPACE / 41 + GamePanel.MENU_X_MARGIN, i * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 2 + GamePanel.MENU_Y_SPACE / 6 + GamePanel.MENU_Y_OFFSET);
+				
+				// Level difficulty, once analyzed
+				String rating = snapshot.getRating(k);
+				if (rating != null) g.drawString(rating, j * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 2 - g.getFontMetrics().stringWidth(rating) / 2 + GamePanel.MENU_X_MARGIN, i * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 4 + GamePanel.MENU_X_SPACE / 2 + GamePanel.MENU_Y_SPACE / 8 + GamePanel.MENU_Y_OFFSET);
 			}
 
-			if (this.getController().getPageId() == this.getController().getMaxPageId()) {
+			if (snapshot.getPageId() == snapshot.getMaxPageId()) {
 				// Level add icon
-				int remainder = this.getController().getLevels().size() % (GamePanel.MENU_X_LENGTH * GamePanel.MENU_Y_LENGTH);
+				int remainder = snapshot.getLevelCount() % (GamePanel.MENU_X_LENGTH * GamePanel.MENU_Y_LENGTH);
 				int p = remainder / GamePanel.MENU_X_LENGTH;
 				int q = remainder % GamePanel.MENU_X_LENGTH;
 				
-				g.setFont(new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 15));
+				g.setFont(this.addFont);
 				g.drawOval(q * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 4 + GamePanel.MENU_X_MARGIN, p * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 4 + GamePanel.MENU_Y_OFFSET, GamePanel.MENU_X_SPACE / 2, GamePanel.MENU_X_SPACE / 2);
 				g.drawString("+", q * GamePanel.MENU_X_SPACE + GamePanel.MENU_X_SPACE / 2 - 2 * GamePanel.MENU_X_SPACE / 17 + GamePanel.MENU_X_MARGIN, p * GamePanel.MENU_Y_SPACE + GamePanel.MENU_Y_SPACE / 2 + GamePanel.MENU_Y_SPACE / 7 + GamePanel.MENU_Y_OFFSET);
 			}
 			
 			break;
 		case LEVEL: case LEVEL_ADD:
-			int length = this.getController().getLevel().getSquareLength();
+			int length = snapshot.getSquareLength();
 			int space = GameWindow.WINDOW_LENGTH / length;
 			
-			// Background of selected case
-			Case selection = this.getController().getSelection();
-			if (selection != null) {
-				g.setColor(GamePanel.SELECT_COLOR);
-				g.fillRect(selection.getX() * space, selection.getY() * space, space, space);
-			}
+			// Only cases intersecting the clip are drawn, single moves only repaint the cases they touched
+			Rectangle clip = g.getClipBounds();
+			if (clip == null) clip = new Rectangle(0, 0, GameWindow.WINDOW_LENGTH, GameWindow.WINDOW_LENGTH);
+			int firstI = Math.max(0, clip.y / space);
+			int lastI = Math.min(length - 1, (clip.y + clip.height) / space);
+			int firstJ = Math.max(0, clip.x / space);
+			int lastJ = Math.min(length - 1, (clip.x + clip.width) / space);
 			
-			// Case separations
-			g.setColor(new Color(255, 255, 255));
-			for (int i = 0; i < length-1; i++) {
-				g.drawLine(0, (i+1) * space, GameWindow.WINDOW_LENGTH, (i+1) * space);
-				g.drawLine((i+1) * space, 0, (i+1) * space, GameWindow.WINDOW_LENGTH);
-			}
+			// Background, case separations and nodes never change while playing : they are drawn once in a cached layer
+			g.drawImage(this.getBoardLayer(g, snapshot), 0, 0, GameWindow.WINDOW_LENGTH, GameWindow.WINDOW_LENGTH, null);
 			
-			// Level nodes
-			for (int i = 0; i < length; i++) {
-				for (int j = 0; j < length; j++) {
-					Case case1 = this.getController().getLevel().getCase(i, j);
-					if (case1.isExtremite()) {
-						g.setColor(case1.getLineColor().getColor());
-						g.fillOval(j * space + space / 4, i * space + space / 4, space / 2, space / 2);
-					}
+			// Background of selected case, inside its separations
+			int selection = snapshot.getSelection();
+			if (selection >= 0) {
+				g.setColor(GamePanel.SELECT_COLOR);
+				g.fillRect((selection % length) * space + 1, (selection / length) * space + 1, space - 1, space - 1);
+				
+				if (snapshot.getSelectedNode() != 0) {
+					g.setColor(LineColor.fromCode(snapshot.getSelectedNode()).getColor());
+					g.fillOval((selection % length) * space + space / 4, (selection / length) * space + space / 4, space / 2, space / 2);
 				}
 			}
 			
-			// Line segments
-			int step = 5;
-			int unit = space / step;
-			
-			for (Line line : this.getController().getLevel().getLines().values()) {
-				if (line.getCases().size() > 1) {
-					g.setColor(line.getLineColor().getColor());
+			for (int i = firstI; i <= lastI; i++) {
+				for (int j = firstJ; j <= lastJ; j++) {
+					int index = i * length + j;
 					
-					int x = line.getCases().get(0).getX();
-					int y = line.getCases().get(0).getY();
-					for (Case ligneCase : line.getCases().subList(1, line.getCases().size())) {
-						int i = ligneCase.getX();
-						int j = ligneCase.getY();
+					// Background of the cases no line can fill anymore and of the ends of the lines that can not be finished
+					if (snapshot.isDeadCase(index)) {
+						g.setColor(GamePanel.DEAD_END_COLOR);
+						g.fillRect(j * space + 1, i * space + 1, space - 1, space - 1);
 						
-						if (i == x) {
-							g.fillRoundRect(x * space + (step / 2) * unit, Math.min(y, j) * space + (step / 2) * unit, unit, (step + 1) * unit, unit, unit);
-						} else if (j == y) {
-							g.fillRoundRect(Math.min(x, i) * space + (step / 2) * unit, y * space + (step / 2) * unit, (step + 1) * unit, unit, unit, unit);
+						byte node = snapshot.getNode(index);
+						if (node != 0) {
+							g.setColor(LineColor.fromCode(node).getColor());
+							g.fillOval(j * space + space / 4, i * space + space / 4, space / 2, space / 2);
 						}
+					}
+					
+					// Line segments going to the previous and next cases of the line
+					byte line = snapshot.getLine(index);
+					if (line != 0) {
+						byte joins = snapshot.getJoins(index);
 						
-						x = i; y = j;
+						g.setColor(LineColor.fromCode(line).getColor());
+						if ((joins & Snapshot.UP) != 0) GamePanel.drawSegment(g, index - length, index, length, space);
+						if ((joins & Snapshot.DOWN) != 0) GamePanel.drawSegment(g, index, index + length, length, space);
+						if ((joins & Snapshot.LEFT) != 0) GamePanel.drawSegment(g, index - 1, index, length, space);
+						if ((joins & Snapshot.RIGHT) != 0) GamePanel.drawSegment(g, index, index + 1, length, space);
 					}
 				}
 			}
 			break;
 		case LEVEL_FINISHED:
 			g.setColor(GamePanel.WHITE);
-			g.setFont(new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 9));
+			this.updateFonts();
+			g.setFont(this.titleFont);
 			g.drawString("Niveau termin", GameWindow.WINDOW_LENGTH / 8, GameWindow.WINDOW_LENGTH / 3);
 			
-			g.setFont(new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 20));
+			g.setFont(this.menuFont);
 			g.drawString("> Menu principal", 5 * GameWindow.WINDOW_LENGTH / 16, 2 * GameWindow.WINDOW_LENGTH / 3 + GameWindow.WINDOW_LENGTH / 18);
 			g.drawRect(GameWindow.WINDOW_LENGTH / 4, 2 * GameWindow.WINDOW_LENGTH / 3, GameWindow.WINDOW_LENGTH / 2, GameWindow.WINDOW_LENGTH / 12);
 			break;
 		}
 	}
 
+	/**
+	 * Creates the fonts again only if the window length changed since they were last created
+	 */
+	private void updateFonts() {
+		if (this.fontLength == GameWindow.WINDOW_LENGTH) return;
+		
+		this.fontLength = GameWindow.WINDOW_LENGTH;
+		this.titleFont = new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 9);
+		this.menuFont = new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 20);
+		this.addFont = new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 15);
+		this.textFont = new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 30);
+		this.smallFont = new Font("Segoe UI", Font.PLAIN, GameWindow.WINDOW_LENGTH / 60);
+	}
+	
+	/**
+	 * Returns the layer holding the background, the case separations and the nodes of a level,
+	 * drawn again only when the window is resized or the level is zoomed, dezoomed or gets new nodes
+	 * @param g graphics the layer will be drawn on, whose scale gives the resolution of the layer on HiDPI screens
+	 * @param snapshot
+	 * @return the layer, WINDOW_LENGTH pixels wide once scaled
+	 */
+	private BufferedImage getBoardLayer(Graphics g, Snapshot snapshot) {
+		double scale = g instanceof Graphics2D ? Math.max(1, ((Graphics2D) g).getTransform().getScaleX()) : 1;
+		
+		if (this.boardLayer != null && this.boardNodes == snapshot.getNodes() && this.boardLength == GameWindow.WINDOW_LENGTH && this.boardScale == scale) {
+			return this.boardLayer;
+		}
+		
+		int size = (int) Math.ceil(GameWindow.WINDOW_LENGTH * scale);
+		GraphicsConfiguration configuration = this.getGraphicsConfiguration();
+		if (this.boardLayer == null || this.boardLayer.getWidth() != size) {
+			this.boardLayer = configuration != null ? configuration.createCompatibleImage(size, size) : new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		}
+		
+		this.boardNodes = snapshot.getNodes();
+		this.boardLength = GameWindow.WINDOW_LENGTH;
+		this.boardScale = scale;
+		
+		Graphics2D layer = this.boardLayer.createGraphics();
+		layer.scale(scale, scale);
+		
+		int length = snapshot.getSquareLength();
+		int space = GameWindow.WINDOW_LENGTH / length;
+		
+		layer.setColor(GamePanel.BACKGROUND_COLOR);
+		layer.fillRect(0, 0, GameWindow.WINDOW_LENGTH, GameWindow.WINDOW_LENGTH);
+		
+		// Case separations
+		layer.setColor(GamePanel.WHITE);
+		for (int i = 0; i < length-1; i++) {
+			layer.drawLine(0, (i+1) * space, GameWindow.WINDOW_LENGTH, (i+1) * space);
+			layer.drawLine((i+1) * space, 0, (i+1) * space, GameWindow.WINDOW_LENGTH);
+		}
+		
+		// Level nodes
+		for (int i = 0; i < length; i++) {
+			for (int j = 0; j < length; j++) {
+				byte node = snapshot.getNode(i * length + j);
+				if (node != 0) {
+					layer.setColor(LineColor.fromCode(node).getColor());
+					layer.fillOval(j * space + space / 4, i * space + space / 4, space / 2, space / 2);
+				}
+			}
+		}
+		
+		layer.dispose();
+		return this.boardLayer;
+	}
+	
+	/**
+	 * Draws the segment joining the centers of two neighbor cases
+	 * @param g
+	 * @param from index of the first case
+	 * @param to index of the second case
+	 * @param length square length of the level
+	 * @param space size of a case
+	 */
+	private static void drawSegment(Graphics g, int from, int to, int length, int space) {
+		int step = 5;
+		int unit = space / step;
+		
+		int x = from % length;
+		int y = from / length;
+		int i = to % length;
+		int j = to / length;
+		
+		if (i == x) {
+			g.fillRoundRect(x * space + (step / 2) * unit, Math.min(y, j) * space + (step / 2) * unit, unit, (step + 1) * unit, unit, unit);
+		} else if (j == y) {
+			g.fillRoundRect(Math.min(x, i) * space + (step / 2) * unit, y * space + (step / 2) * unit, (step + 1) * unit, unit, unit, unit);
+		}
+	}
+	
+	/**
+	 * Repaints the given cases of the current level and their neighbors, which hold half of the segments joining them
+	 * @param snapshot holding the indices of the cases
+	 */
+	public void repaintCases(Snapshot snapshot) {
+		BitSet changes = snapshot.getChanges();
+		int length = snapshot.getSquareLength();
+		int space = GameWindow.WINDOW_LENGTH / length;
+		
+		for (int index = changes.nextSetBit(0); index >= 0; index = changes.nextSetBit(index + 1)) {
+			int i = index / length;
+			int j = index % length;
+			this.repaint((j - 1) * space, (i - 1) * space, 3 * space, 3 * space);
+		}
+	}
+	
 	@Override
 	public void componentHidden(ComponentEvent arg0) {
 	}
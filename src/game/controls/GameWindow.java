@@ -27,19 +27,22 @@ public class GameWindow extends JFrame {
 	public static final int WINDOW_X_OFFSET = 18;
 	
 	private final GamePanel gamePanel;
+	private final GameLoop gameLoop;
 	private final GameListener gameListener;
 	public GameWindow(GraphicsConfiguration gc) {
 		super(gc);
 		
 		final GameController gameController = new GameController(GameState.MAIN_MENU);
 		this.gamePanel = new GamePanel(gameController);
-		this.gameListener = new GameListener(gameController, this.gamePanel);
+		this.gameLoop = new GameLoop(gameController, this.gamePanel);
+		this.gameListener = new GameListener(this.gameLoop);
 		
 		this.setTitle("Free Flow Game");
 		this.setPreferredSize(new Dimension(GameWindow.WINDOW_X_OFFSET + GameWindow.WINDOW_LENGTH, GameWindow.WINDOW_Y_OFFSET + GameWindow.WINDOW_LENGTH));
 		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
 		this.addMouseListener(this.gameListener);
+		this.addMouseMotionListener(this.gameListener);
 		this.addMouseWheelListener(this.gameListener);
 		this.addKeyListener(this.gameListener);
 		
@@ -66,4 +69,8 @@ public class GameWindow extends JFrame {
 		return gameListener;
 	}
 
+	public GameLoop getGameLoop() {
+		return gameLoop;
+	}
+
 }
\ No newline at end of file
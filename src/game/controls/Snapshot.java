@@ -0,0 +1,236 @@
+package game.controls;
+
+import java.util.BitSet;
+
+import game.controls.GameController.GameState;
+import game.models.Case;
+import game.models.Level;
+import game.models.LevelLibrary;
+import game.models.Line;
+import game.solver.Analyzer;
+import game.solver.Connectivity;
+
+/**
+ * Immutable copy of everything GamePanel draws, published by the game logic thread after each batch of commands
+ * so the panel never reads the models while they change. Arrays are never written once the snapshot is built.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public final class Snapshot {
+
+	// directions of the segments leaving a case
+	public static final byte UP = 1;
+	public static final byte DOWN = 2;
+	public static final byte LEFT = 4;
+	public static final byte RIGHT = 8;
+
+	private final GameState state;
+
+	// main menu : levels of the current page only
+	private final int pageId;
+	private final int maxPageId;
+	private final int levelCount;
+	private final byte[] statuses;
+	private final int[] squareLengths;
+	private final String[] ratings;
+
+	// level
+	private final Object board; // level the nodes were copied from, only compared to know if they can be shared
+	private final int boardVersion;
+	private final int squareLength;
+	private final byte[] nodes; // shared by the following snapshots as long as the board does not change
+	private final byte[] lines; // code of the line color going through each case, 0 if none
+	private final byte[] joins; // directions of the segments leaving each case
+	private final int selection; // index of the selected case, -1 if none
+	private final byte selectedNode; // code of the node color of the selected case, 0 if it is not a node
+	private final BitSet changes; // cases changed since the previous snapshot
+	private final BitSet deadCases; // regions no line can fill and ends of the lines that can not be finished, while playing only
+
+	/**
+	 * Copies the state of a controller, must be called by the thread writing it
+	 * @param controller
+	 * @param previous last snapshot published, whose nodes are reused if the board did not change
+	 */
+	public Snapshot(GameController controller, Snapshot previous) {
+		this.state = controller.getState();
+		this.pageId = controller.getPageId();
+		this.maxPageId = controller.getMaxPageId();
+
+		LevelLibrary levels = controller.getLevels();
+		this.levelCount = levels.size();
+		int offsetId = this.pageId * GamePanel.MENU_X_LENGTH * GamePanel.MENU_Y_LENGTH;
+		int count = this.state.equals(GameState.MAIN_MENU) ? Math.max(0, Math.min(GamePanel.MENU_X_LENGTH * GamePanel.MENU_Y_LENGTH, this.levelCount - offsetId)) : 0;
+		this.statuses = new byte[count];
+		this.squareLengths = new int[count];
+		this.ratings = new String[count];
+		for (int k = 0; k < count; k++) {
+			this.statuses[k] = levels.getStatus(offsetId + k);
+			this.squareLengths[k] = levels.getSquareLength(offsetId + k);
+			this.ratings[k] = Analyzer.getRating(controller.getDifficulty(offsetId + k));
+		}
+
+		Level level = this.state.equals(GameState.LEVEL) || this.state.equals(GameState.LEVEL_ADD) ? controller.getLevel() : null;
+		if (level == null) {
+			this.board = null;
+			this.boardVersion = 0;
+			this.squareLength = 0;
+			this.nodes = null;
+			this.lines = null;
+			this.joins = null;
+			this.selection = -1;
+			this.selectedNode = 0;
+			this.changes = new BitSet();
+			this.deadCases = new BitSet();
+			return;
+		}
+
+		this.board = level;
+		this.boardVersion = level.getBoardVersion();
+		this.squareLength = level.getSquareLength();
+		int size = this.squareLength * this.squareLength;
+
+		if (previous != null && previous.board == level && previous.boardVersion == this.boardVersion) {
+			this.nodes = previous.nodes;
+		} else {
+			this.nodes = new byte[size];
+			for (int index = 0; index < size; index++) this.nodes[index] = level.getNode(index);
+		}
+
+		this.lines = new byte[size];
+		this.joins = new byte[size];
+		for (Line line : level.getLines().values()) {
+			byte code = line.getLineColor().getCode();
+			for (int position = 0; position < line.size(); position++) {
+				int index = line.getIndex(position);
+				this.lines[index] = code;
+				if (position > 0) this.joins[index] |= this.getDirection(index, line.getIndex(position - 1));
+				if (position < line.size() - 1) this.joins[index] |= this.getDirection(index, line.getIndex(position + 1));
+			}
+		}
+
+		Case selected = controller.getSelection();
+		boolean current = selected != null && selected.getLevel() == level;
+		this.selection = current ? level.getIndex(selected) : -1;
+		this.selectedNode = current && selected.isExtremite() ? selected.getLineColor().getCode() : 0;
+		this.changes = (BitSet) level.getChanges().clone();
+
+		Connectivity connectivity = controller.getConnectivity();
+		this.deadCases = this.state.equals(GameState.LEVEL) && connectivity.getLevel() == level ? (BitSet) connectivity.getDeadCases().clone() : new BitSet();
+	}
+
+	/**
+	 * @param from
+	 * @param to index of a neighbor of from
+	 * @return the direction going from a case to its neighbor
+	 */
+	private byte getDirection(int from, int to) {
+		if (to == from - this.squareLength) return Snapshot.UP;
+		if (to == from + this.squareLength) return Snapshot.DOWN;
+		return to < from ? Snapshot.LEFT : Snapshot.RIGHT;
+	}
+
+	/**
+	 * @return true if a level is displayed
+	 */
+	public boolean isLevel() {
+		return this.nodes != null;
+	}
+
+	/**
+	 * @param other
+	 * @return true if both snapshots display the same board, so only changed cases need to be drawn again
+	 */
+	public boolean isSameBoard(Snapshot other) {
+		return other != null && this.isLevel() && this.state.equals(other.state) && this.board == other.board && this.squareLength == other.squareLength;
+	}
+
+	public GameState getState() {
+		return state;
+	}
+
+	public int getPageId() {
+		return pageId;
+	}
+
+	public int getMaxPageId() {
+		return maxPageId;
+	}
+
+	public int getLevelCount() {
+		return levelCount;
+	}
+
+	/**
+	 * @return the number of levels of the current page
+	 */
+	public int getPageCount() {
+		return this.statuses.length;
+	}
+
+	/**
+	 * @param k position of the level in the current page
+	 * @return its status (see LevelLibrary)
+	 */
+	public byte getStatus(int k) {
+		return this.statuses[k];
+	}
+
+	public int getSquareLength(int k) {
+		return this.squareLengths[k];
+	}
+
+	/**
+	 * @param k position of the level in the current page
+	 * @return its difficulty rating, null until it is known
+	 */
+	public String getRating(int k) {
+		return this.ratings[k];
+	}
+
+	public int getSquareLength() {
+		return squareLength;
+	}
+
+	/**
+	 * @return the node codes of the level, the same array as long as the board does not change
+	 */
+	public byte[] getNodes() {
+		return nodes;
+	}
+
+	public byte getNode(int index) {
+		return this.nodes[index];
+	}
+
+	public byte getLine(int index) {
+		return this.lines[index];
+	}
+
+	public byte getJoins(int index) {
+		return this.joins[index];
+	}
+
+	public int getSelection() {
+		return selection;
+	}
+
+	public byte getSelectedNode() {
+		return selectedNode;
+	}
+
+	public BitSet getChanges() {
+		return changes;
+	}
+
+	/**
+	 * @param index
+	 * @return true if the case is in a region no line can fill, or ends a line that can not be finished
+	 */
+	public boolean isDeadCase(int index) {
+		return this.deadCases.get(index);
+	}
+
+}
@@ -0,0 +1,140 @@
+package game.controls;
+
+import java.awt.event.KeyEvent;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import game.models.Case;
+import game.models.Level;
+import game.models.Line;
+
+/**
+ * Recorder of the player's inputs, one command per line, in cell coordinates so traces do not depend on the window
+ *
+ * level <parameter>           opens a level, fresh from its parameter string
+ * select [ligne colonne]      clicks a case, or anywhere once the level is finished
+ * draw <ligne> <colonne>      drags the selection to a case, through the cases in between
+ * key <name>                  presses a key, named after its KeyEvent constant without VK_ (UP, H, ESCAPE...)
+ * expect <state> [filled]     checks the game state and the number of filled cases, only written by hand
+ *
+ * Lines starting with # are comments. Traces are replayed without any window by game.Replay.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Trace implements Closeable {
+
+	public static final String LEVEL = "level";
+	public static final String SELECT = "select";
+	public static final String DRAW = "draw";
+	public static final String KEY = "key";
+	public static final String EXPECT = "expect";
+
+	private static Map<String, Integer> keyCodes;
+	private static Map<Integer, String> keyNames;
+
+	private final PrintWriter writer;
+
+	public Trace(File file) throws IOException {
+		this.writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Records the opening of a level, followed by the lines it already holds so the replay starts from the same board
+	 * @param level
+	 */
+	public void level(Level level) {
+		this.write(Trace.LEVEL + " " + level.getParameter());
+
+		for (Line line : level.getLines().values()) {
+			for (int position = 0; position < line.size(); position++) {
+				Case case1 = line.getCase(position);
+				this.write((position == 0 ? Trace.SELECT : Trace.DRAW) + " " + case1.getY() + " " + case1.getX());
+			}
+		}
+	}
+
+	/**
+	 * @param case1 clicked case, null if the click is not on a case
+	 */
+	public void select(Case case1) {
+		this.write(case1 != null ? Trace.SELECT + " " + case1.getY() + " " + case1.getX() : Trace.SELECT);
+	}
+
+	public void draw(Case case1) {
+		this.write(Trace.DRAW + " " + case1.getY() + " " + case1.getX());
+	}
+
+	public void key(int keyCode) {
+		String name = Trace.getKeyName(keyCode);
+		if (name != null) this.write(Trace.KEY + " " + name);
+	}
+
+	/**
+	 * Writes a command right away, so the trace is complete even if the game is killed
+	 * @param command
+	 */
+	private void write(String command) {
+		this.writer.println(command);
+		this.writer.flush();
+	}
+
+	@Override
+	public void close() {
+		this.writer.close();
+	}
+
+	/**
+	 * @param name
+	 * @return the code of the key named name (see KeyEvent), -1 if there is none
+	 */
+	public static int getKeyCode(String name) {
+		Integer keyCode = Trace.getKeyCodes().get(name);
+		return keyCode != null ? keyCode : -1;
+	}
+
+	/**
+	 * @param keyCode
+	 * @return the name of the key, null if it is unknown
+	 */
+	public static String getKeyName(int keyCode) {
+		Trace.getKeyCodes();
+		return Trace.keyNames.get(keyCode);
+	}
+
+	/**
+	 * @return the codes of every key by name, read once from the VK_ constants of KeyEvent
+	 */
+	private static synchronized Map<String, Integer> getKeyCodes() {
+		if (Trace.keyCodes == null) {
+			Trace.keyCodes = new HashMap<String, Integer>();
+			Trace.keyNames = new HashMap<Integer, String>();
+
+			for (Field field : KeyEvent.class.getFields()) {
+				if (!field.getName().startsWith("VK_") || !Modifier.isStatic(field.getModifiers()) || field.getType() != int.class) continue;
+
+				try {
+
+					String name = field.getName().substring(3);
+					int keyCode = field.getInt(null);
+					Trace.keyCodes.put(name, keyCode);
+					if (!Trace.keyNames.containsKey(keyCode)) Trace.keyNames.put(keyCode, name);
+
+				} catch (IllegalAccessException e) {
+				}
+			}
+		}
+		return Trace.keyCodes;
+	}
+
+}
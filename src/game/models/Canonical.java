@@ -0,0 +1,208 @@
+package game.models;
+
+import java.util.Arrays;
+
+/**
+ * Canonical form of level parameters : levels that are rotations, reflections or recolorings of each other have the same one
+ *
+ * The form is the smallest parameter, in character order, among the 8 rotations and reflections of the square,
+ * each with its colors renamed after LineColor values in the order they first appear. It is a parameter itself.
+ * Its key is a 64 bits hash, two different levels of a million share one with a probability of about 1 in 30 million.
+ *
+ * An instance reuses its buffers, so it must not be shared between threads.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Canonical {
+
+	private static final int SYMMETRIES = 8;
+	private static final LineColor[] LINE_COLORS = LineColor.values();
+
+	private char[] grid = new char[0]; // parameter padded with empty cases to a square
+	private char[] best = new char[0];
+	private char[] form = new char[0];
+	private char[] renamed = new char[Canonical.LINE_COLORS.length]; // characters of the current symmetry in the order they were met
+	private final char[] labels = new char[256]; // new name of each ISO-8859-1 character of the current symmetry, 0 if not met yet
+	private char[] chars = new char[0]; // characters of the last parameter
+	private int length;
+	private int symmetry; // symmetry giving the canonical form of the last parameter
+	private final int[] steps = new int[3]; // origin, down and right of the last symmetry read by setSteps
+
+	/**
+	 * @param parameter
+	 * @return the canonical form of the parameter
+	 */
+	public static String getForm(String parameter) {
+		Canonical canonical = new Canonical();
+		canonical.load(parameter.toCharArray(), parameter.length());
+		return new String(canonical.best, 0, canonical.length * canonical.length);
+	}
+
+	/**
+	 * @param parameter
+	 * @return the key of the canonical form of the parameter
+	 */
+	public static long getKey(String parameter) {
+		return new Canonical().compute(parameter);
+	}
+
+	/**
+	 * @param parameter
+	 * @return the key of the canonical form of the parameter, computed with the buffers of this instance
+	 */
+	public long compute(String parameter) {
+		if (this.chars.length < parameter.length()) this.chars = new char[parameter.length()];
+		parameter.getChars(0, parameter.length(), this.chars, 0);
+		return this.compute(this.chars, parameter.length());
+	}
+
+	/**
+	 * @param parameter characters of a parameter, such as a line being read
+	 * @param count number of characters of the parameter
+	 * @return the key of the canonical form of the parameter, computed with the buffers of this instance
+	 */
+	public long compute(char[] parameter, int count) {
+		this.load(parameter, count);
+
+		// FNV-1a, then the final mix of MurmurHash3 so close forms spread over every bit
+		long hash = 0xCBF29CE484222325L;
+		for (int k = 0; k < this.length * this.length; k++) hash = (hash ^ this.best[k]) * 0x100000001B3L;
+
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	/**
+	 * Sets best to the canonical form of the parameter
+	 * @param parameter
+	 * @param count
+	 */
+	private void load(char[] parameter, int count) {
+		this.length = (int) Math.ceil(Math.sqrt(count));
+		int size = this.length * this.length;
+		if (this.grid.length < size) {
+			this.grid = new char[size];
+			this.best = new char[size];
+			this.form = new char[size];
+		}
+
+		System.arraycopy(parameter, 0, this.grid, 0, count);
+		for (int k = count; k < size; k++) this.grid[k] = '0';
+
+		this.write(0, this.best, null);
+		this.symmetry = 0;
+		for (int symmetry = 1; symmetry < Canonical.SYMMETRIES; symmetry++) {
+			if (this.write(symmetry, this.form, this.best)) {
+				char[] swap = this.best;
+				this.best = this.form;
+				this.form = swap;
+				this.symmetry = symmetry;
+			}
+		}
+	}
+
+	/**
+	 * Maps a case of the canonical form of the last parameter back to the parameter, so data stored for a form,
+	 * such as the paths of a solution, applies to every level sharing it
+	 * @param k index in the canonical form
+	 * @return the index of the same case in the parameter
+	 */
+	public int getIndex(int k) {
+		this.setSteps(this.symmetry);
+		return this.steps[0] + (k / this.length) * this.steps[1] + (k % this.length) * this.steps[2];
+	}
+
+	/**
+	 * @return the square length of the last parameter
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Sets steps to the origin, down and right steps of a symmetry : the case seen at (i, j) is origin + i * down + j * right
+	 * @param symmetry 0 to 7
+	 */
+	private void setSteps(int symmetry) {
+		int n = this.length;
+		int last = n - 1;
+
+		switch (symmetry) {
+		case 0: this.steps[0] = 0; this.steps[1] = n; this.steps[2] = 1; break; // identity
+		case 1: this.steps[0] = 0; this.steps[1] = 1; this.steps[2] = n; break; // transposition
+		case 2: this.steps[0] = last; this.steps[1] = n; this.steps[2] = -1; break; // vertical axis
+		case 3: this.steps[0] = last * n; this.steps[1] = -n; this.steps[2] = 1; break; // horizontal axis
+		case 4: this.steps[0] = last * n + last; this.steps[1] = -n; this.steps[2] = -1; break; // half turn
+		case 5: this.steps[0] = last; this.steps[1] = -1; this.steps[2] = n; break; // quarter turn
+		case 6: this.steps[0] = last * n; this.steps[1] = 1; this.steps[2] = -n; break; // three quarter turn
+		default: this.steps[0] = last * n + last; this.steps[1] = -1; this.steps[2] = -n; break; // anti transposition
+		}
+	}
+
+	/**
+	 * Writes the grid seen through a symmetry with its colors renamed, giving up as soon as it is known to be greater than bound
+	 * @param symmetry 0 to 7
+	 * @param form
+	 * @param bound null to always write the whole form
+	 * @return true if the form was written and is smaller than bound
+	 */
+	private boolean write(int symmetry, char[] form, char[] bound) {
+		int n = this.length;
+
+		this.setSteps(symmetry);
+		int origin = this.steps[0];
+		int down = this.steps[1];
+		int right = this.steps[2];
+
+		int count = 0;
+		boolean smaller = bound == null;
+		boolean written = true;
+
+		for (int i = 0, k = 0; i < n && written; i++) {
+			for (int j = 0, index = origin + i * down; j < n; j++, k++, index += right) {
+				char ch = this.grid[index];
+				if (ch != '0') {
+					char label = ch < this.labels.length ? this.labels[ch] : 0;
+					if (label == 0) {
+						int rank = 0;
+						while (rank < count && this.renamed[rank] != ch) rank++;
+						if (rank == count) {
+							if (count == this.renamed.length) this.renamed = Arrays.copyOf(this.renamed, 2 * count);
+							this.renamed[count++] = ch;
+						}
+						label = Canonical.getLabel(rank);
+						if (ch < this.labels.length) this.labels[ch] = label;
+					}
+					ch = label;
+				}
+				form[k] = ch;
+
+				if (!smaller) {
+					if (ch > bound[k]) {
+						written = false;
+						break;
+					}
+					if (ch < bound[k]) smaller = true;
+				}
+			}
+		}
+
+		for (int rank = 0; rank < count; rank++) {
+			if (this.renamed[rank] < this.labels.length) this.labels[this.renamed[rank]] = 0;
+		}
+		return written && smaller;
+	}
+
+	/**
+	 * @param rank
+	 * @return the name of the rank-th color met, the LineColor values first
+	 */
+	private static char getLabel(int rank) {
+		return rank < Canonical.LINE_COLORS.length ? Canonical.LINE_COLORS[rank].name().charAt(0) : (char) ('a' + rank - Canonical.LINE_COLORS.length);
+	}
+
+}
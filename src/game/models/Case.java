@@ -14,6 +14,8 @@ public class Case {
 	private final int y;
 	private LineColor lineColor; // is not null if Case is a node
 	private Line line; // is not null if Case has a Line
+	private int position = -1; // position of the Case in the path of its Line, -1 if Case has no Line
+	private Level level; // is not null once the Case is placed in a Level, which mirrors its node and line in flat arrays
 	public Case(int x, int y, LineColor lineColor) {
 		this.x = x;
 		this.y = y;
@@ -26,6 +28,7 @@ public class Case {
 	
 	public void setLineColor(LineColor lineColor) {
 		this.lineColor = lineColor;
+		if (this.level != null) this.level.updateNode(this);
 	}
 
 	public boolean isExtremite() {
@@ -42,6 +45,15 @@ public class Case {
 
 	public void setLine(Line line) {
 		this.line = line;
+		if (this.level != null) this.level.updateOwner(this);
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	void setPosition(int position) {
+		this.position = position;
 	}
 
 	public int getX() {
@@ -52,6 +64,14 @@ public class Case {
 		return y;
 	}
 	
+	public Level getLevel() {
+		return level;
+	}
+
+	void setLevel(Level level) {
+		this.level = level;
+	}
+
 	public boolean isNextTo(Case dest) {
 		int diffX = Math.abs(this.getX() - dest.getX());
 		int diffY = Math.abs(this.getY() - dest.getY());
@@ -0,0 +1,329 @@
+package game.models;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Undo and redo history of a level, stored as a log of the cases each move changed
+ *
+ * A move records, for every line it changed, the position from which the path changed with the old and the new cases
+ * after it, and for every node it changed the old and the new color. Recording a move and going back or forth a move
+ * only costs the cases it changed, the board is never copied : a deep history of a 25x25 level holds a few kilobytes.
+ *
+ * Changes are recorded as the level sees them and grouped in a move until commit is called, so every change is
+ * always part of a move. The history is cleared when the level is filled again or resized.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class History {
+
+	private static final int LINE = 0; // code, position, removed count, removed cases, added count, added cases
+	private static final int NODE = 1; // index, old code, new code
+	private static final int COLORS = LineColor.values().length + 1;
+
+	private final Level level;
+
+	// committed moves : selection before, selection after, entries
+	private short[] log = new short[64]; // square lengths are at most 25, every value fits in a short
+	private int[] moves = new int[16]; // start of each move in the log, followed by the end of the last one
+	private int moveCount = 0; // moves that can be redone included
+	private int current = 0; // moves applied, the next undo goes back from the current-th one
+
+	// move being recorded
+	private final boolean[] touched = new boolean[History.COLORS];
+	private final int[] marks = new int[History.COLORS]; // lowest position each touched line was truncated to
+	private final int[][] removed = new int[History.COLORS][]; // cases removed from under each mark, last one first
+	private final int[] removedCounts = new int[History.COLORS];
+	private final BitSet touchedNodes = new BitSet();
+	private int[] nodes = new int[8]; // index and old code of each touched node
+	private int nodeCount = 0;
+	private boolean open = false;
+	private int selection = -1; // selected case after the last committed move
+
+	private boolean applying = false; // true while an undo or redo changes the level, which must not be recorded
+
+	History(Level level) {
+		this.level = level;
+	}
+
+	/**
+	 * Called by a line before cases are removed from position to the end of its path
+	 * @param line
+	 * @param position
+	 */
+	void truncating(Line line, int position) {
+		if (this.applying || position >= line.size()) return;
+
+		int code = this.touch(line);
+		if (this.removed[code] == null || this.removed[code].length < this.removedCounts[code] + this.marks[code] - position) {
+			this.removed[code] = Arrays.copyOf(this.removed[code] != null ? this.removed[code] : new int[0], Math.max(16, 2 * (this.removedCounts[code] + this.marks[code] - position)));
+		}
+
+		// cases under the mark have not changed since the move started
+		for (int k = this.marks[code] - 1; k >= position; k--) this.removed[code][this.removedCounts[code]++] = line.getIndex(k);
+		this.marks[code] = Math.min(this.marks[code], position);
+	}
+
+	/**
+	 * Called by a line before a case is added to its path
+	 * @param line
+	 */
+	void pushing(Line line) {
+		if (!this.applying) this.touch(line);
+	}
+
+	/**
+	 * @param line
+	 * @return the code of the line, whose path is remembered as it was when the move started
+	 */
+	private int touch(Line line) {
+		int code = line.getLineColor().getCode();
+		if (!this.touched[code]) {
+			this.touched[code] = true;
+			this.marks[code] = line.size();
+			this.removedCounts[code] = 0;
+		}
+		this.open = true;
+		return code;
+	}
+
+	/**
+	 * Called by the level before the node color of a case changes
+	 * @param index
+	 * @param code old code
+	 */
+	void changingNode(int index, byte code) {
+		if (this.applying || this.touchedNodes.get(index)) return;
+
+		this.touchedNodes.set(index);
+		if (2 * this.nodeCount + 2 > this.nodes.length) this.nodes = Arrays.copyOf(this.nodes, 2 * this.nodes.length);
+		this.nodes[2 * this.nodeCount] = index;
+		this.nodes[2 * this.nodeCount + 1] = code;
+		this.nodeCount++;
+		this.open = true;
+	}
+
+	/**
+	 * Ends the move being recorded, moves that could be redone are forgotten if it changed anything
+	 * @param selection index of the case selected after the move, -1 if none
+	 */
+	public void commit(int selection) {
+		if (!this.open) {
+			this.select(selection);
+			return;
+		}
+
+		int start = this.moves[this.current];
+		int end = start;
+		end = this.write(end, this.selection);
+		end = this.write(end, selection);
+		int entries = end;
+
+		for (int k = 0; k < this.nodeCount; k++) {
+			int index = this.nodes[2 * k];
+			byte code = this.level.getNode(index);
+			if (code == this.nodes[2 * k + 1]) continue;
+
+			end = this.write(end, History.NODE);
+			end = this.write(end, index);
+			end = this.write(end, this.nodes[2 * k + 1]);
+			end = this.write(end, code);
+		}
+
+		for (int code = 1; code < History.COLORS; code++) {
+			if (!this.touched[code]) continue;
+
+			Line line = this.level.getLine(LineColor.fromCode(code));
+			int mark = this.marks[code];
+			int added = line != null ? line.size() - mark : 0;
+			if (added == this.removedCounts[code] && this.isUnchanged(line, code)) continue;
+
+			end = this.write(end, History.LINE);
+			end = this.write(end, code);
+			end = this.write(end, mark);
+			end = this.write(end, this.removedCounts[code]);
+			for (int k = this.removedCounts[code] - 1; k >= 0; k--) end = this.write(end, this.removed[code][k]);
+			end = this.write(end, added);
+			for (int k = 0; k < added; k++) end = this.write(end, line.getIndex(mark + k));
+		}
+
+		this.reset();
+		if (end == entries) { // nothing changed in the end
+			this.select(selection);
+			return;
+		}
+		this.selection = selection;
+
+		if (this.current + 2 >= this.moves.length) this.moves = Arrays.copyOf(this.moves, 2 * this.moves.length);
+		this.current++;
+		this.moves[this.current] = end;
+		this.moveCount = this.current;
+	}
+
+	/**
+	 * Records a selection change alone, which is not a move : redoing the last move selects the same case
+	 * @param selection
+	 */
+	private void select(int selection) {
+		if (this.current > 0 && this.current == this.moveCount) this.log[this.moves[this.current - 1] + 1] = (short) selection;
+		this.selection = selection;
+	}
+
+	/**
+	 * @param line
+	 * @param code
+	 * @return true if the line got back the very cases it had when the move started
+	 */
+	private boolean isUnchanged(Line line, int code) {
+		for (int k = 0; k < this.removedCounts[code]; k++) {
+			if (line.getIndex(this.marks[code] + k) != this.removed[code][this.removedCounts[code] - 1 - k]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param position
+	 * @param value
+	 * @return the position following the value written in the log
+	 */
+	private int write(int position, int value) {
+		if (position == this.log.length) this.log = Arrays.copyOf(this.log, 2 * this.log.length);
+		this.log[position] = (short) value;
+		return position + 1;
+	}
+
+	/**
+	 * Forgets the move being recorded
+	 */
+	private void reset() {
+		for (int code = 1; code < History.COLORS; code++) this.touched[code] = false;
+		this.touchedNodes.clear();
+		this.nodeCount = 0;
+		this.open = false;
+	}
+
+	/**
+	 * Goes back a move, the move being recorded is committed first
+	 * @param selection index of the case selected now, -1 if none
+	 * @return the index of the case selected before the move, -2 if there is no move to undo
+	 */
+	public int undo(int selection) {
+		this.commit(selection);
+		if (this.current == 0) return -2;
+
+		this.current--;
+		this.apply(this.moves[this.current], this.moves[this.current + 1], false);
+		this.selection = this.log[this.moves[this.current]];
+		return this.selection;
+	}
+
+	/**
+	 * Goes forth a move undone
+	 * @param selection index of the case selected now, -1 if none
+	 * @return the index of the case selected after the move, -2 if there is no move to redo
+	 */
+	public int redo(int selection) {
+		this.commit(selection);
+		if (this.current == this.moveCount) return -2;
+
+		this.apply(this.moves[this.current], this.moves[this.current + 1], true);
+		this.selection = this.log[this.moves[this.current] + 1];
+		this.current++;
+		return this.selection;
+	}
+
+	/**
+	 * Sets the level as it was before or after a move
+	 * Every changed line is cut first, so no case is taken back by a line while another one still holds it
+	 * @param start of the move in the log
+	 * @param end of the move in the log
+	 * @param forth true to redo the move, false to undo it
+	 */
+	private void apply(int start, int end, boolean forth) {
+		this.applying = true;
+
+		for (int position = start + 2; position < end; ) {
+			if (this.log[position] == History.NODE) {
+				this.level.getCase(this.log[position + 1]).setLineColor(LineColor.fromCode(this.log[position + (forth ? 3 : 2)]));
+				position += 4;
+			} else {
+				this.getLine(this.log[position + 1]).restore(this.log[position + 2], this.log, 0, 0);
+				position = this.skip(position);
+			}
+		}
+
+		for (int position = start + 2; position < end; ) {
+			if (this.log[position] == History.NODE) {
+				position += 4;
+				continue;
+			}
+
+			int removedCount = this.log[position + 3];
+			int from = forth ? position + 5 + removedCount : position + 4;
+			int count = forth ? this.log[position + 4 + removedCount] : removedCount;
+			this.getLine(this.log[position + 1]).restore(this.log[position + 2], this.log, from, count);
+			position = this.skip(position);
+		}
+
+		this.applying = false;
+	}
+
+	/**
+	 * @param position of a line entry in the log
+	 * @return the position of the next entry
+	 */
+	private int skip(int position) {
+		int removedCount = this.log[position + 3];
+		return position + 5 + removedCount + this.log[position + 4 + removedCount];
+	}
+
+	/**
+	 * @param code
+	 * @return the line of the color, added to the level if it does not have one anymore
+	 */
+	private Line getLine(int code) {
+		LineColor lineColor = LineColor.fromCode(code);
+		Line line = this.level.getLine(lineColor);
+		if (line == null) {
+			line = new Line(lineColor);
+			this.level.addLine(line);
+		}
+		return line;
+	}
+
+	/**
+	 * Forgets every move
+	 */
+	public void clear() {
+		this.reset();
+		this.moveCount = 0;
+		this.current = 0;
+		this.selection = -1;
+	}
+
+	public boolean canUndo() {
+		return this.current > 0 || this.open;
+	}
+
+	public boolean canRedo() {
+		return this.current < this.moveCount;
+	}
+
+	/**
+	 * @return the number of moves that can be undone, the one being recorded excluded
+	 */
+	public int size() {
+		return current;
+	}
+
+	/**
+	 * @return the memory held by the log in bytes
+	 */
+	public long getFootprint() {
+		return 2L * this.log.length + 4L * this.moves.length;
+	}
+
+}
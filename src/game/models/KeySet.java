@@ -0,0 +1,86 @@
+package game.models;
+
+/**
+ * Set of 64 bits keys, such as Canonical keys, stored in a single open addressing array without boxing
+ * It holds 8 to 16 bytes per key whatever the size of the levels, a million keys fit in 16 MB.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class KeySet {
+
+	private long[] keys; // 0 marks an empty entry, the key 0 itself is kept aside
+	private boolean zero;
+	private int size;
+
+	public KeySet() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity number of keys the set holds before it grows
+	 */
+	public KeySet(int capacity) {
+		this.keys = new long[Integer.highestOneBit(Math.max(8, 2 * capacity - 1)) << 1];
+	}
+
+	/**
+	 * @param key
+	 * @return true if the key was not in the set yet
+	 */
+	public boolean add(long key) {
+		if (key == 0) {
+			if (this.zero) return false;
+			this.zero = true;
+			this.size++;
+			return true;
+		}
+
+		int entry = this.find(key);
+		if (this.keys[entry] == key) return false;
+
+		this.keys[entry] = key;
+		if (++this.size > this.keys.length / 2) this.grow();
+		return true;
+	}
+
+	public boolean contains(long key) {
+		return key == 0 ? this.zero : this.keys[this.find(key)] == key;
+	}
+
+	/**
+	 * @param key other than 0
+	 * @return the entry of the key, or the empty entry where it would be added
+	 */
+	private int find(long key) {
+		int mask = this.keys.length - 1;
+		int entry = (int) (key ^ (key >>> 32)) & mask;
+		while (this.keys[entry] != 0 && this.keys[entry] != key) entry = (entry + 1) & mask;
+		return entry;
+	}
+
+	/**
+	 * Doubles the array, so it is never more than half full
+	 */
+	private void grow() {
+		long[] keys = this.keys;
+		this.keys = new long[2 * keys.length];
+		for (long key : keys) {
+			if (key != 0) this.keys[this.find(key)] = key;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the memory held by the set in bytes
+	 */
+	public long getFootprint() {
+		return 8L * this.keys.length;
+	}
+
+}
@@ -2,6 +2,8 @@ package game.models;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
@@ -16,18 +18,36 @@ import java.util.Random;
  */
 public class Level {
 
+	public static final int MIN_SQUARE_LENGTH = 5;
+	public static final int MAX_SQUARE_LENGTH = 25;
+
 	private String parameter;
 	private int squareLength;
 	
 	private final HashMap<Character, LineColor> lineColors = new HashMap<Character, LineColor>(); // map characters of parameter string to their LineColor value, in case they have no native correspondance
-	private final HashMap<String, Case> cases; // case on line l, column c is saved by key 'lc'
+	private final Case[] cases; // row-major grid : case on line l, column c is saved at index l * squareLength + c
+	private final byte[] nodes; // code of the LineColor of the node at each index, 0 if the case is not a node
+	private final byte[] owners; // code of the LineColor of the Line going through each index, 0 if the case has no Line
 	private final HashMap<LineColor, Line> lines;
 	
+	// running counters keeping completion checks constant time
+	private int filledCount; // cases with a Line
+	private int singleCount; // Lines made of a single case
+	private int connectedCount; // Lines going from one node to the other
+	
+	private final BitSet changes = new BitSet(); // indices of the cases whose node or line changed since the last clearChanges()
+	private final BitSet lineChanges = new BitSet(); // indices of the cases whose line changed since the last clearLineChanges()
+	private int boardVersion = 0; // incremented each time nodes or size change, so drawings of the board know they are outdated
+	private final History history = new History(this);
+	
 	public Level(int squareLength) {
 		this.parameter = "";
 		this.squareLength = squareLength;
 		
-		this.cases = new HashMap<String, Case>();
+		int capacity = Level.getCapacity(squareLength);
+		this.cases = new Case[capacity];
+		this.nodes = new byte[capacity];
+		this.owners = new byte[capacity];
 		this.lines = new HashMap<LineColor, Line>();
 
 		this.fill();
@@ -37,13 +57,26 @@ public class Level {
 		this.parameter = parameter;
 		this.squareLength = (int) Math.ceil(Math.sqrt(parameter.length()));
 		
-		this.cases = new HashMap<String, Case>();
+		int capacity = Level.getCapacity(this.squareLength);
+		this.cases = new Case[capacity];
+		this.nodes = new byte[capacity];
+		this.owners = new byte[capacity];
 		this.lines = new HashMap<LineColor, Line>();
 		
 		this.generateLineCodes();
 		this.fill();
 	}
 	
+	/**
+	 * Arrays are allocated once for the biggest level reachable by dezoom, so that zoom and dezoom never reallocate
+	 * @param squareLength
+	 * @return the number of cases the flat arrays must hold
+	 */
+	private static int getCapacity(int squareLength) {
+		int length = Math.max(squareLength, Level.MAX_SQUARE_LENGTH);
+		return length * length;
+	}
+	
 	public LineColor getRandomUnusedLineColor() {
 		List<LineColor> lineColors = new ArrayList<LineColor>(Arrays.asList(LineColor.values()));
 		lineColors.removeAll(this.getLineColors().values());
@@ -94,8 +127,13 @@ public class Level {
 	 * @param cases
 	 */
 	public void fill() {
-		this.getCases().clear();
+		Arrays.fill(this.cases, null);
+		Arrays.fill(this.nodes, (byte) 0);
+		Arrays.fill(this.owners, (byte) 0);
+		for (Line line : this.getLines().values()) line.setLevel(null);
 		this.getLines().clear();
+		this.filledCount = 0;
+		this.boardVersion++;
 		
 		if (this.parameter.length() > 0 && this.parameter.length() < this.squareLength * this.squareLength) {
 			System.out.println(String.format("Parameter string (%s) is not long enough, level will be completed with empty cases", this.parameter));
@@ -117,8 +155,7 @@ public class Level {
 					} else System.out.println(String.format("Node %s in level (%s) has no color left => is replaced by empty case", String.valueOf(ch), this.getParameter()));
 					
 					if (lineColor != null && !this.getLines().containsKey(lineColor)) {
-						Line line = new Line(lineColor);
-						this.getLines().put(lineColor, line);
+						this.addLine(new Line(lineColor));
 					}
 				}
 
@@ -126,33 +163,176 @@ public class Level {
 				this.setCase(i, j, case1);
 			}
 		}
+		
+		this.history.clear(); // moves of the previous board cannot be undone on this one
 	}
 	
 	public Case getCase(int ligne, int colonne) {
-		return this.getCases().get(String.valueOf(ligne) + "." + String.valueOf(colonne));
+		if (ligne < 0 || colonne < 0 || ligne >= this.getSquareLength() || colonne >= this.getSquareLength()) return null;
+		return this.cases[this.getIndex(ligne, colonne)];
+	}
+	
+	public Case getCase(int index) {
+		return this.cases[index];
+	}
+	
+	/**
+	 * @param ligne
+	 * @param colonne
+	 * @return the index of the case on line l, column c in the flat arrays of the level
+	 */
+	public int getIndex(int ligne, int colonne) {
+		return ligne * this.getSquareLength() + colonne;
+	}
+	
+	public int getIndex(Case case1) {
+		return this.getIndex(case1.getY(), case1.getX());
+	}
+	
+	public int getCaseCount() {
+		return this.getSquareLength() * this.getSquareLength();
+	}
+	
+	/**
+	 * @param index
+	 * @return the code of the LineColor of the node at index (see LineColor.getCode()), 0 if there is none
+	 */
+	public byte getNode(int index) {
+		return this.nodes[index];
+	}
+	
+	/**
+	 * @param index
+	 * @return the code of the LineColor of the Line going through index (see LineColor.getCode()), 0 if there is none
+	 */
+	public byte getOwner(int index) {
+		return this.owners[index];
 	}
 	
 	public Line getLine(LineColor color) {
 		return this.getLines().get(color);
 	}
 
-	public HashMap<String, Case> getCases() {
-		return cases;
+	/**
+	 * @return a read-only row-major view of the cases of the level
+	 */
+	public List<Case> getCases() {
+		return Collections.unmodifiableList(Arrays.asList(this.cases).subList(0, this.getCaseCount()));
 	}
 
 	public HashMap<LineColor, Line> getLines() {
 		return lines;
 	}
 	
+	/**
+	 * Adds line to the level, replacing the Line of the same color if there is one
+	 * @param line
+	 */
+	public void addLine(Line line) {
+		Line oldLine = this.getLines().put(line.getLineColor(), line);
+		if (oldLine != null && oldLine != line) oldLine.setLevel(null);
+		line.setLevel(this);
+	}
+	
 	public void setCase(int ligne, int colonne, Case newCase) {
-		this.getCases().put(String.valueOf(ligne) + "." + String.valueOf(colonne), newCase);
+		int index = this.getIndex(ligne, colonne);
+		Case oldCase = this.cases[index];
+		if (oldCase != null) oldCase.setLevel(null);
+		
+		this.cases[index] = newCase;
+		newCase.setLevel(this);
+		this.updateNode(newCase);
+		this.updateOwner(newCase);
 	}
 	
 	public void removeCase(int ligne, int colonne) {
-		String key1 = String.valueOf(ligne) + "." + String.valueOf(colonne);
-		Case case1 = this.getCases().get(key1);
+		int index = this.getIndex(ligne, colonne);
+		Case case1 = this.cases[index];
 		if (case1 != null && case1.hasLine()) case1.getLine().reset(null);
-		this.getCases().remove(key1);
+		if (case1 != null) case1.setLevel(null);
+		
+		this.cases[index] = null;
+		this.nodes[index] = 0;
+		this.setOwner(index, (byte) 0);
+	}
+	
+	/**
+	 * Called by a Case of this level when its node color changes
+	 * @param case1
+	 */
+	void updateNode(Case case1) {
+		int index = this.getIndex(case1);
+		byte code = case1.isExtremite() ? case1.getLineColor().getCode() : 0;
+		if (code != this.nodes[index]) this.history.changingNode(index, this.nodes[index]);
+		
+		this.nodes[index] = code;
+		this.changes.set(index);
+		this.boardVersion++;
+		if (case1.hasLine()) case1.getLine().update(); // the line may have become (dis)connected
+	}
+	
+	/**
+	 * Called by a Case of this level when its Line changes
+	 * @param case1
+	 */
+	void updateOwner(Case case1) {
+		this.setOwner(this.getIndex(case1), case1.hasLine() ? case1.getLine().getLineColor().getCode() : 0);
+	}
+	
+	private void setOwner(int index, byte owner) {
+		this.changes.set(index);
+		this.lineChanges.set(index);
+		if (this.owners[index] != 0) this.filledCount--;
+		if (owner != 0) this.filledCount++;
+		this.owners[index] = owner;
+	}
+	
+	/**
+	 * @return indices of the cases whose node or line changed since the last clearChanges(), to redraw only them
+	 */
+	public BitSet getChanges() {
+		return changes;
+	}
+	
+	/**
+	 * Marks a case as changed, for changes the level can not see such as a new selection
+	 * @param index
+	 */
+	public void markChanged(int index) {
+		this.changes.set(index);
+	}
+	
+	public void clearChanges() {
+		this.changes.clear();
+	}
+	
+	/**
+	 * @return indices of the cases whose line changed since the last clearLineChanges(), kept apart from getChanges() so checks of the lines do not depend on drawings
+	 */
+	public BitSet getLineChanges() {
+		return lineChanges;
+	}
+	
+	public void clearLineChanges() {
+		this.lineChanges.clear();
+	}
+	
+	public int getBoardVersion() {
+		return boardVersion;
+	}
+	
+	public History getHistory() {
+		return history;
+	}
+	
+	/**
+	 * Called by a Line of this level when it starts or stops being single or connected
+	 * @param singles
+	 * @param connected
+	 */
+	void countLine(int singles, int connected) {
+		this.singleCount += singles;
+		this.connectedCount += connected;
 	}
 
 	public int getSquareLength() {
@@ -164,29 +344,30 @@ public class Level {
 	}
 	
 	public boolean isFinished() {
-		for (Case case1 : this.getCases().values()) {
-			if (!case1.hasLine()) return false;
-		}
-		
-		for (Line line : this.getLines().values()) {
-			if (line.getCases().size() == 1) return false; // for creation mode validation
-		}
-		
-		return true;
+		return this.filledCount == this.getCaseCount() && this.singleCount == 0; // single lines are refused for creation mode validation
 	}
 	
 	public boolean isUnfinished() {
-		for (Case case1 : this.getCases().values()) {
-			if (case1.hasLine()) return true;
-		}
-		
-		return false;
+		return this.filledCount > 0;
+	}
+	
+	public int getFilledCount() {
+		return filledCount;
+	}
+
+	public int getSingleCount() {
+		return singleCount;
+	}
+
+	public int getConnectedCount() {
+		return connectedCount;
 	}
 	
 	public List<Case> getExtremites(LineColor lineColor) {
 		List<Case> extremites = new ArrayList<Case>();
-		for (Case case1 : this.getCases().values()) {
-			if (case1.isExtremite() && case1.getLineColor().equals(lineColor)) extremites.add(case1);
+		byte code = lineColor.getCode();
+		for (int index = 0; index < this.getCaseCount(); index++) {
+			if (this.nodes[index] == code) extremites.add(this.cases[index]);
 		}
 		return extremites;
 	}
@@ -225,25 +406,64 @@ public class Level {
 	}
 	
 	public void zoom() {
-		if (this.getSquareLength() > 5) {
+		if (this.getSquareLength() > Level.MIN_SQUARE_LENGTH) {
 			for (int k = 0; k < this.getSquareLength(); k++) {
 				this.removeCase(this.getSquareLength() - 1, k);
 				this.removeCase(k, this.getSquareLength() - 1);
 			}
 			
-			this.setSquareLength(this.getSquareLength() - 1);
+			this.resize(this.getSquareLength() - 1);
 		}
 	}
 	
 	public void dezoom() {
-		if (this.getSquareLength() < 25) {
-			for (int k = 0; k < this.getSquareLength() + 1; k++) {
-				this.setCase(this.getSquareLength(), k, new Case(k, this.getSquareLength(), null));
-				this.setCase(k, this.getSquareLength(), new Case(this.getSquareLength(), k, null));
-			}
+		if (this.getSquareLength() < Level.MAX_SQUARE_LENGTH) {
+			this.resize(this.getSquareLength() + 1);
 			
-			this.setSquareLength(this.getSquareLength() + 1);
+			for (int k = 0; k < this.getSquareLength(); k++) {
+				this.setCase(this.getSquareLength() - 1, k, new Case(k, this.getSquareLength() - 1, null));
+				this.setCase(k, this.getSquareLength() - 1, new Case(this.getSquareLength() - 1, k, null));
+			}
+		}
+	}
+	
+	/**
+	 * Moves the cases of the level to the row stride of a new square length, in place
+	 * Cases outside of the smallest of both lengths must have been removed beforehand
+	 * @param squareLength
+	 */
+	private void resize(int squareLength) {
+		int oldLength = this.getSquareLength();
+		int common = Math.min(oldLength, squareLength);
+		
+		if (squareLength < oldLength) {
+			// indices only decrease : moving forward never overwrites a case not moved yet
+			for (int i = 0; i < common; i++) {
+				for (int j = 0; j < common; j++) this.move(i * oldLength + j, i * squareLength + j);
+			}
+		} else {
+			// indices only increase : moving backward never overwrites a case not moved yet
+			for (int i = common - 1; i >= 0; i--) {
+				for (int j = common - 1; j >= 0; j--) this.move(i * oldLength + j, i * squareLength + j);
+			}
 		}
+		
+		for (Line line : this.getLines().values()) line.reindex(oldLength, squareLength);
+		this.setSquareLength(squareLength);
+		this.boardVersion++;
+		this.history.clear(); // logged indices use the previous row stride
+	}
+	
+	private void move(int from, int to) {
+		if (from == to) return;
+		
+		this.cases[to] = this.cases[from];
+		this.nodes[to] = this.nodes[from];
+		this.owners[to] = this.owners[from];
+		
+		this.cases[from] = null;
+		this.nodes[from] = 0;
+		this.owners[from] = 0;
 	}
 
 }
@@ -0,0 +1,601 @@
+package game.models;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class indexing the levels of a levels file without loading them
+ * 
+ * Only the offset and length of each line of the file are kept in memory,
+ * binary level packs (see LevelPack) are read into memory once and decoded in place.
+ * A Level is materialized from its parameter string when it is opened,
+ * and at most CACHE_SIZE untouched Levels are kept alive.
+ * 
+ * Levels are presented sorted by size through an index, the file itself is never reordered while it is open.
+ * Created levels are appended to a journal next to the file by a background writer,
+ * the journal is merged into the file the next time the library is opened.
+ * 
+ * The Canonical key of every level is kept, so levels that are rotations, reflections or recolorings
+ * of another one are counted when the file is indexed and never saved.
+ * 
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class LevelLibrary {
+	
+	public static final int CACHE_SIZE = 64;
+	public static final String JOURNAL_EXTENSION = ".journal";
+	public static final String MERGING_EXTENSION = ".merging";
+	
+	public static final byte STATUS_NEW = 0;
+	public static final byte STATUS_UNFINISHED = 1;
+	public static final byte STATUS_FINISHED = 2;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MOVE_ATTEMPTS = 5;
+	
+	private final File file;
+	private final File journal;
+	private final File merging; // journal being merged into the file, left behind if the merge was interrupted
+	private FileChannel channel;
+	private LevelPack pack; // is not null if the file is a level pack
+	private ExecutorService writer; // single thread appending saved levels to the journal
+	private boolean hooked = false; // true once pending writes are flushed at shutdown
+	
+	// position and length of the parameter string of each level of the file, levels are stored in slots : file levels first, then added ones
+	private long[] offsets = new long[64];
+	private int[] lengths = new int[64];
+	private int fileCount = 0;
+	private final List<Level> added = new ArrayList<Level>(); // levels added since the file was indexed, in slots following the file's ones
+	
+	// sort index : slots of saved levels grouped by square length, followed by slots of levels still in creation
+	private int[][] buckets = new int[Level.MAX_SQUARE_LENGTH + 1][];
+	private int[] bucketSizes = new int[Level.MAX_SQUARE_LENGTH + 1];
+	private final List<Integer> pending = new ArrayList<Integer>();
+	
+	private byte[] statuses = new byte[64]; // status of each slot, kept up to date by updateStatus so the menu never looks at levels themselves
+	private byte[] difficulties = new byte[64]; // difficulty of each slot (see Analyzer), 0 until it is known
+	
+	private final Canonical canonical = new Canonical();
+	private KeySet keys = new KeySet();
+	private int duplicateCount = 0; // levels of the file whose key was already taken by a level before them
+	
+	private final LinkedHashMap<Integer, Level> cache = new LinkedHashMap<Integer, Level>(); // materialized levels by slot, least recently used first
+	
+	public LevelLibrary() {
+		this.file = null;
+		this.journal = null;
+		this.merging = null;
+	}
+	
+	public LevelLibrary(File file) throws IOException {
+		this.file = file;
+		this.journal = new File(file.getPath() + LevelLibrary.JOURNAL_EXTENSION);
+		this.merging = new File(file.getPath() + LevelLibrary.MERGING_EXTENSION);
+		
+		if (this.merging.exists()) this.compact(); // left by an interrupted merge
+		if (this.journal.length() > 0) {
+			Files.move(this.journal.toPath(), this.merging.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			this.compact();
+		}
+		this.index();
+	}
+	
+	/**
+	 * Scans the levels file once to record where each non empty line starts and ends
+	 * @throws IOException
+	 */
+	private void index() throws IOException {
+		this.fileCount = 0;
+		this.keys = new KeySet();
+		this.duplicateCount = 0;
+		
+		if (LevelPack.isPack(this.file)) {
+			this.pack = new LevelPack(this.file);
+			this.fileCount = this.pack.size();
+			for (int slot = 0; slot < this.fileCount; slot++) this.addKey(this.canonical.compute(this.pack.getParameter(slot)));
+		} else {
+			this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+			this.scan(this.channel);
+		}
+		
+		for (int slot = 0; slot < this.fileCount; slot++) this.insert(slot);
+		this.statuses = new byte[this.fileCount + 64];
+		this.difficulties = new byte[this.fileCount + 64];
+		for (int slot = 0; slot < this.fileCount && this.pack != null; slot++) this.difficulties[slot] = (byte) this.pack.getDifficulty(slot);
+	}
+	
+	/**
+	 * Records the lines of a text file, and their keys from the characters read on the way
+	 * @param channel
+	 * @throws IOException
+	 */
+	private void scan(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(LevelLibrary.BUFFER_SIZE);
+		char[] line = new char[Level.MAX_SQUARE_LENGTH * Level.MAX_SQUARE_LENGTH];
+		int count = 0;
+		long position = 0;
+		long start = 0;
+		byte previous = 0;
+		
+		while (channel.read(buffer) > 0) {
+			buffer.flip();
+			byte[] bytes = buffer.array();
+			
+			for (int k = 0; k < buffer.limit(); k++) {
+				if (bytes[k] == '\n') {
+					if (previous == '\r') count--;
+					this.record(start, previous == '\r' ? position + k - 1 : position + k, line, count);
+					start = position + k + 1;
+					count = 0;
+				} else {
+					if (count == line.length) line = Arrays.copyOf(line, 2 * count);
+					line[count++] = (char) (bytes[k] & 0xFF);
+				}
+				previous = bytes[k];
+			}
+			
+			position += buffer.limit();
+			buffer.clear();
+		}
+		
+		if (previous == '\r') count--;
+		this.record(start, previous == '\r' ? position - 1 : position, line, count);
+	}
+	
+	/**
+	 * Records the line between start and end, excluded, skipping it if it is empty
+	 * @param start
+	 * @param end
+	 * @param line characters of the line
+	 * @param count
+	 */
+	private void record(long start, long end, char[] line, int count) {
+		if (end <= start) return;
+		
+		this.addKey(this.canonical.compute(line, count));
+		
+		if (this.fileCount == this.offsets.length) {
+			this.offsets = Arrays.copyOf(this.offsets, 2 * this.fileCount);
+			this.lengths = Arrays.copyOf(this.lengths, 2 * this.fileCount);
+		}
+		
+		this.offsets[this.fileCount] = start;
+		this.lengths[this.fileCount] = (int) (end - start);
+		this.fileCount++;
+	}
+	
+	/**
+	 * @param key Canonical key of a level of the file
+	 */
+	private void addKey(long key) {
+		if (!this.keys.add(key)) this.duplicateCount++;
+	}
+	
+	/**
+	 * @param parameter
+	 * @return true if a level of the file, or a saved one, is the same level up to rotations, reflections and colors
+	 */
+	public boolean isDuplicate(String parameter) {
+		return this.keys.contains(this.canonical.compute(parameter));
+	}
+	
+	/**
+	 * @return the number of levels of the file that are the same as a level before them, up to rotations, reflections and colors
+	 */
+	public int getDuplicateCount() {
+		return duplicateCount;
+	}
+	
+	/**
+	 * Adds a slot at the end of the bucket of its square length
+	 * @param slot
+	 */
+	private void insert(int slot) {
+		int squareLength = this.getSlotSquareLength(slot);
+		
+		if (squareLength >= this.buckets.length) {
+			this.buckets = Arrays.copyOf(this.buckets, squareLength + 1);
+			this.bucketSizes = Arrays.copyOf(this.bucketSizes, squareLength + 1);
+		}
+		
+		int[] bucket = this.buckets[squareLength];
+		int size = this.bucketSizes[squareLength];
+		if (bucket == null) bucket = this.buckets[squareLength] = new int[16];
+		else if (size == bucket.length) bucket = this.buckets[squareLength] = Arrays.copyOf(bucket, 2 * size);
+		
+		bucket[size] = slot;
+		this.bucketSizes[squareLength]++;
+	}
+	
+	/**
+	 * @param id
+	 * @return the slot of the level displayed at id, found in a number of steps bounded by the number of square lengths
+	 */
+	private int getSlot(int id) {
+		for (int squareLength = 0; squareLength < this.buckets.length; squareLength++) {
+			if (id < this.bucketSizes[squareLength]) return this.buckets[squareLength][id];
+			id -= this.bucketSizes[squareLength];
+		}
+		return this.pending.get(id);
+	}
+	
+	public int size() {
+		return this.fileCount + this.added.size();
+	}
+	
+	/**
+	 * @param id
+	 * @return the parameter string of the level, read from the file if the level is not materialized
+	 * Positional reads make it safe to call from several threads as long as no level is materialized meanwhile
+	 */
+	public String getParameter(int id) {
+		return this.getSlotParameter(this.getSlot(id));
+	}
+	
+	private String getSlotParameter(int slot) {
+		Level level = this.peek(slot);
+		if (level != null) return level.getParameter();
+		if (this.pack != null) return this.pack.getParameter(slot);
+		
+		ByteBuffer buffer = ByteBuffer.allocate(this.lengths[slot]);
+		try {
+			
+			while (buffer.hasRemaining()) {
+				if (this.channel.read(buffer, this.offsets[slot] + buffer.position()) < 0) break;
+			}
+			
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		return new String(buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1);
+	}
+	
+	public int getSquareLength(int id) {
+		return this.getSlotSquareLength(this.getSlot(id));
+	}
+	
+	private int getSlotSquareLength(int slot) {
+		Level level = this.peek(slot);
+		if (level != null) return level.getSquareLength();
+		if (this.pack != null) return this.pack.getSquareLength(slot);
+		
+		return (int) Math.ceil(Math.sqrt(this.lengths[slot]));
+	}
+	
+	/**
+	 * @param id
+	 * @return STATUS_NEW, STATUS_UNFINISHED or STATUS_FINISHED, as last recorded by updateStatus
+	 */
+	public byte getStatus(int id) {
+		return this.statuses[this.getSlot(id)];
+	}
+	
+	public boolean isFinished(int id) {
+		return this.getStatus(id) == LevelLibrary.STATUS_FINISHED;
+	}
+	
+	public boolean isUnfinished(int id) {
+		return this.getStatus(id) == LevelLibrary.STATUS_UNFINISHED;
+	}
+	
+	/**
+	 * Records the status of a level after it has been played
+	 * @param id
+	 */
+	public void updateStatus(int id) {
+		int slot = this.getSlot(id);
+		Level level = this.peek(slot);
+		
+		if (level == null) this.statuses[slot] = LevelLibrary.STATUS_NEW;
+		else if (level.isFinished()) this.statuses[slot] = LevelLibrary.STATUS_FINISHED;
+		else if (level.isUnfinished()) this.statuses[slot] = LevelLibrary.STATUS_UNFINISHED;
+		else this.statuses[slot] = LevelLibrary.STATUS_NEW;
+	}
+	
+	/**
+	 * @param id
+	 * @return the difficulty of the level (see Analyzer), stored in level packs or recorded by setDifficulty, 0 if it is unknown
+	 */
+	public int getDifficulty(int id) {
+		return this.difficulties[this.getSlot(id)] & 0xFF;
+	}
+	
+	public void setDifficulty(int id, int difficulty) {
+		this.difficulties[this.getSlot(id)] = (byte) difficulty;
+	}
+	
+	/**
+	 * @param id
+	 * @return true if the level is still in creation
+	 */
+	public boolean isPending(int id) {
+		return this.pending.contains(this.getSlot(id));
+	}
+	
+	/**
+	 * @param id
+	 * @return the level, materialized from its parameter string if it is not alive yet
+	 */
+	public Level get(int id) {
+		int slot = this.getSlot(id);
+		if (slot >= this.fileCount) return this.added.get(slot - this.fileCount);
+		
+		Level level = this.cache.remove(slot);
+		if (level == null) level = new Level(this.getSlotParameter(slot));
+		
+		this.cache.put(slot, level); // (re)inserted last as the most recently used
+		this.evict(slot);
+		
+		return level;
+	}
+	
+	/**
+	 * @param slot
+	 * @return the level if it is alive, null otherwise, without changing the cache order
+	 */
+	private Level peek(int slot) {
+		if (slot >= this.fileCount) return this.added.get(slot - this.fileCount);
+		return this.cache.get(slot);
+	}
+	
+	/**
+	 * Drops least recently used levels nobody has played until the cache fits in CACHE_SIZE
+	 * Levels holding lines are kept so progress is never lost
+	 * @param current slot that must not be dropped
+	 */
+	private void evict(int current) {
+		Iterator<Map.Entry<Integer, Level>> iterator = this.cache.entrySet().iterator();
+		while (this.cache.size() > LevelLibrary.CACHE_SIZE && iterator.hasNext()) {
+			Map.Entry<Integer, Level> entry = iterator.next();
+			if (entry.getKey() != current && !entry.getValue().isUnfinished()) iterator.remove();
+		}
+	}
+	
+	/**
+	 * Adds a level in creation after every other one, it is only written once saved
+	 * @param level
+	 * @return the id of the level
+	 */
+	public int add(Level level) {
+		this.added.add(level);
+		if (this.size() > this.statuses.length) {
+			this.statuses = Arrays.copyOf(this.statuses, 2 * this.size());
+			this.difficulties = Arrays.copyOf(this.difficulties, 2 * this.size());
+		}
+		this.pending.add(this.size() - 1);
+		return this.size() - 1;
+	}
+	
+	/**
+	 * Moves a level in creation to its sorted position and appends it to the journal in the background
+	 * A level that is the same as one of the library, up to rotations, reflections and colors, is not saved and stays in creation
+	 * @param id
+	 * @return the new id of the level
+	 */
+	public int save(int id) {
+		int slot = this.getSlot(id);
+		if (!this.pending.contains(slot)) return id;
+		
+		String parameter = this.getSlotParameter(slot);
+		if (!this.keys.add(this.canonical.compute(parameter))) {
+			System.err.println(String.format("Level (%s) not saved : it is a rotation, reflection or recoloring of a level of %s", parameter, this.file != null ? this.file.getPath() : "the library"));
+			return id;
+		}
+		this.pending.remove((Integer) slot);
+		
+		this.insert(slot);
+		if (this.journal != null) {
+			this.getWriter().execute(() -> this.append(parameter));
+		}
+		
+		int squareLength = this.getSlotSquareLength(slot);
+		int newId = this.bucketSizes[squareLength] - 1;
+		for (int k = 0; k < squareLength; k++) newId += this.bucketSizes[k];
+		return newId;
+	}
+	
+	/**
+	 * Appends a parameter string to the journal and forces it to the disk
+	 * @param parameter
+	 */
+	private void append(String parameter) {
+		try (FileChannel channel = FileChannel.open(this.journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			
+			ByteBuffer buffer = ByteBuffer.wrap((parameter + System.lineSeparator()).getBytes(StandardCharsets.ISO_8859_1));
+			while (buffer.hasRemaining()) channel.write(buffer);
+			channel.force(true);
+			
+		} catch (IOException e) {
+			System.err.println(String.format("Level (%s) could not be saved to %s : %s", parameter, this.journal.getPath(), e.getMessage()));
+		}
+	}
+	
+	private synchronized ExecutorService getWriter() {
+		if (this.writer == null) {
+			this.writer = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Levels journal writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		
+		if (!this.hooked) {
+			Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+			this.hooked = true;
+		}
+		return this.writer;
+	}
+	
+	/**
+	 * Waits for saved levels to be written to the journal
+	 */
+	public synchronized void flush() {
+		if (this.writer == null) return;
+		
+		this.writer.shutdown();
+		try {
+			
+			this.writer.awaitTermination(1, TimeUnit.MINUTES);
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.writer = null;
+	}
+	
+	/**
+	 * Merges the journal, renamed aside so levels saved meanwhile go to a new journal, into the levels file, sorted by size
+	 * The merged file is written aside, forced to the disk and atomically moved over the levels file before the renamed journal is deleted,
+	 * the directory being forced after each step : an interruption leaves either the old file and the renamed journal,
+	 * or the merged file and a renamed journal whose levels it already holds, which are skipped by their keys when it is merged again
+	 * @throws IOException
+	 */
+	private void compact() throws IOException {
+		this.index();
+		
+		List<String> parameters = new ArrayList<String>(this.fileCount);
+		List<Byte> difficulties = new ArrayList<Byte>(this.fileCount);
+		List<Long> checksums = new ArrayList<Long>(this.fileCount);
+		for (int id = 0; id < this.fileCount; id++) {
+			int slot = this.getSlot(id);
+			parameters.add(this.getSlotParameter(slot));
+			difficulties.add(this.pack != null ? (byte) this.pack.getDifficulty(slot) : 0);
+			checksums.add(this.pack != null ? this.pack.getChecksum(slot) : -1L);
+		}
+		
+		// a last line missing its line separator was interrupted while being appended
+		String journal = new String(Files.readAllBytes(this.merging.toPath()), StandardCharsets.ISO_8859_1);
+		String[] lines = journal.split("\r?\n", -1);
+		for (int k = 0; k < lines.length - 1; k++) {
+			if (lines[k].length() == 0 || !this.keys.add(this.canonical.compute(lines[k]))) continue;
+			parameters.add(lines[k]);
+			difficulties.add((byte) 0);
+			checksums.add(-1L);
+		}
+		
+		// levels of the file are already sorted and stay before journal ones of the same size
+		Integer[] order = new Integer[parameters.size()];
+		for (int k = 0; k < order.length; k++) order[k] = k;
+		Arrays.sort(order, Comparator.comparing((Integer k) -> (int) Math.ceil(Math.sqrt(parameters.get(k).length()))));
+		
+		List<String> sorted = new ArrayList<String>(order.length);
+		byte[] sortedDifficulties = new byte[order.length];
+		long[] sortedChecksums = new long[order.length];
+		for (int k = 0; k < order.length; k++) {
+			sorted.add(parameters.get(order[k]));
+			sortedDifficulties[k] = difficulties.get(order[k]);
+			sortedChecksums[k] = checksums.get(order[k]);
+		}
+		
+		File temporary = new File(this.file.getPath() + ".tmp");
+		if (this.pack != null) {
+			LevelPack.write(temporary, sorted, sortedDifficulties, sortedChecksums);
+		} else {
+			Files.write(temporary.toPath(), sorted, StandardCharsets.ISO_8859_1);
+		}
+		
+		try (FileChannel output = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)) {
+			output.force(true);
+		}
+		
+		this.close();
+		this.pack = null;
+		this.replace(temporary);
+		this.forceDirectory();
+		
+		Files.delete(this.merging.toPath());
+		this.forceDirectory();
+		
+		this.fileCount = 0;
+		this.pack = null;
+		this.buckets = new int[Level.MAX_SQUARE_LENGTH + 1][];
+		this.bucketSizes = new int[Level.MAX_SQUARE_LENGTH + 1];
+	}
+	
+	/**
+	 * Moves a file over the levels file, atomically if the file system allows it
+	 * Other programs, such as virus scanners on Windows, may briefly hold the levels file open : the move is tried again a few times
+	 * @param temporary
+	 * @throws IOException if the levels file could still not be replaced
+	 */
+	private void replace(File temporary) throws IOException {
+		for (int attempt = 1;; attempt++) {
+			try {
+				try {
+					
+					Files.move(temporary.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temporary.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				return;
+			} catch (FileSystemException e) {
+				if (attempt == LevelLibrary.MOVE_ATTEMPTS) throw e;
+			}
+			
+			try {
+				
+				Thread.sleep(100L * attempt);
+				
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(this.file.getPath() + " could not be replaced", e);
+			}
+		}
+	}
+	
+	/**
+	 * Forces the entries of the directory of the levels file to the disk, so a move or a deletion survives a crash
+	 * Directories cannot be opened on every platform, Windows makes moves durable by itself
+	 */
+	private void forceDirectory() {
+		File directory = this.file.getAbsoluteFile().getParentFile();
+		if (directory == null) return;
+		
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// the directory is forced by the next sync of the file system
+		}
+	}
+	
+	/**
+	 * Releases the levels file
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (this.channel != null) this.channel.close();
+		this.channel = null;
+	}
+	
+	public LevelPack getPack() {
+		return pack;
+	}
+	
+	public File getFile() {
+		return file;
+	}
+
+}
@@ -0,0 +1,248 @@
+package game.models;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class reading and writing binary level packs, a compact random-access alternative to levels.txt
+ * 
+ * Layout (big endian) :
+ * - header : magic "FFLP", version (u16), flags (u16), level count (u32)
+ * - index : offset of each entry from the start of the file (u64)
+ * - entries : square length (u8), color count (u8), difficulty (u8, 0 if unknown), flags (u8),
+ *   solution checksum (u32), node count (u16), then for each node the number of empty cases before it (u8) and its character (u8)
+ * 
+ * Gaps longer than MAX_GAP are split with nodes of character 0, which stand for no node.
+ * Cases after the last node are empty.
+ * 
+ * A pack is read into memory once through its channel rather than mapped, so the file is not held open
+ * and can be replaced while the pack is in use, which a mapping prevents on Windows until it is garbage collected.
+ * 
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class LevelPack {
+	
+	public static final int MAGIC = 0x46464C50; // "FFLP"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 12;
+	public static final int ENTRY_HEADER_SIZE = 10;
+	public static final int FLAG_CHECKSUM = 1; // entry carries the checksum of its solution
+	
+	private static final int MAX_GAP = 255;
+	
+	private final ByteBuffer buffer;
+	private final int count;
+	
+	public LevelPack(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) throw new IOException(file.getPath() + " is too large for a level pack");
+			
+			this.buffer = ByteBuffer.allocate((int) channel.size());
+			while (this.buffer.hasRemaining()) {
+				if (channel.read(this.buffer, this.buffer.position()) < 0) break;
+			}
+			this.buffer.flip();
+		}
+		
+		if (this.buffer.limit() < LevelPack.HEADER_SIZE || this.buffer.getInt(0) != LevelPack.MAGIC) throw new IOException(file.getPath() + " is not a level pack");
+		if ((this.buffer.getShort(4) & 0xFFFF) != LevelPack.VERSION) throw new IOException(file.getPath() + " has an unsupported level pack version");
+		
+		this.count = this.buffer.getInt(8);
+	}
+	
+	/**
+	 * @param file
+	 * @return true if the file starts with the level pack magic number
+	 */
+	public static boolean isPack(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			channel.read(magic, 0);
+			return magic.position() == 4 && magic.getInt(0) == LevelPack.MAGIC;
+			
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	public int size() {
+		return count;
+	}
+	
+	private int getOffset(int id) {
+		return (int) this.buffer.getLong(LevelPack.HEADER_SIZE + 8 * id);
+	}
+	
+	public int getSquareLength(int id) {
+		return this.buffer.get(this.getOffset(id)) & 0xFF;
+	}
+	
+	public int getColorCount(int id) {
+		return this.buffer.get(this.getOffset(id) + 1) & 0xFF;
+	}
+	
+	/**
+	 * @param id
+	 * @return the difficulty of the level, 0 if it is unknown
+	 */
+	public int getDifficulty(int id) {
+		return this.buffer.get(this.getOffset(id) + 2) & 0xFF;
+	}
+	
+	public boolean hasChecksum(int id) {
+		return (this.buffer.get(this.getOffset(id) + 3) & LevelPack.FLAG_CHECKSUM) != 0;
+	}
+	
+	/**
+	 * @param id
+	 * @return the checksum of the solution of the level (see Solution.getChecksum()), -1 if it is unknown
+	 */
+	public long getChecksum(int id) {
+		if (!this.hasChecksum(id)) return -1;
+		return this.buffer.getInt(this.getOffset(id) + 4) & 0xFFFFFFFFL;
+	}
+	
+	/**
+	 * Decodes the nodes of a level into the levels.txt syntax
+	 * @param id
+	 * @return the parameter string of the level
+	 */
+	public String getParameter(int id) {
+		int offset = this.getOffset(id);
+		int squareLength = this.buffer.get(offset) & 0xFF;
+		int nodeCount = this.buffer.getShort(offset + 8) & 0xFFFF;
+		
+		byte[] parameter = new byte[squareLength * squareLength];
+		Arrays.fill(parameter, (byte) '0');
+		
+		int index = 0;
+		int position = offset + LevelPack.ENTRY_HEADER_SIZE;
+		for (int k = 0; k < nodeCount; k++) {
+			index += this.buffer.get(position) & 0xFF;
+			byte ch = this.buffer.get(position + 1);
+			if (ch != 0) parameter[index++] = ch;
+			position += 2;
+		}
+		
+		return new String(parameter, StandardCharsets.ISO_8859_1);
+	}
+	
+	public Level getLevel(int id) {
+		return new Level(this.getParameter(id));
+	}
+	
+	/**
+	 * Writes a level pack
+	 * @param file
+	 * @param parameters parameter strings of the levels, in levels.txt syntax
+	 * @param difficulties difficulty of each level, null if unknown
+	 * @param checksums solution checksum of each level, -1 if unknown, null if they are all unknown
+	 * @throws IOException
+	 */
+	public static void write(File file, List<String> parameters, byte[] difficulties, long[] checksums) throws IOException {
+		byte[][] entries = new byte[parameters.size()][];
+		for (int id = 0; id < entries.length; id++) {
+			long checksum = checksums != null ? checksums[id] : -1;
+			entries[id] = LevelPack.encode(parameters.get(id), difficulties != null ? difficulties[id] : 0, checksum >= 0, (int) checksum);
+		}
+		
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())))) {
+			output.writeInt(LevelPack.MAGIC);
+			output.writeShort(LevelPack.VERSION);
+			output.writeShort(0);
+			output.writeInt(entries.length);
+			
+			long offset = LevelPack.HEADER_SIZE + 8L * entries.length;
+			for (byte[] entry : entries) {
+				output.writeLong(offset);
+				offset += entry.length;
+			}
+			
+			for (byte[] entry : entries) {
+				output.write(entry);
+			}
+		}
+	}
+	
+	/**
+	 * Writes every level of a pack in levels.txt syntax
+	 * @param output
+	 * @throws IOException
+	 */
+	public void writeText(OutputStream output) throws IOException {
+		byte[] separator = System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+		for (int id = 0; id < this.size(); id++) {
+			output.write(this.getParameter(id).getBytes(StandardCharsets.ISO_8859_1));
+			output.write(separator);
+		}
+	}
+	
+	/**
+	 * @param parameter
+	 * @param difficulty
+	 * @param hasChecksum
+	 * @param checksum
+	 * @return the binary entry of a level
+	 */
+	private static byte[] encode(String parameter, int difficulty, boolean hasChecksum, int checksum) {
+		int squareLength = (int) Math.ceil(Math.sqrt(parameter.length()));
+		
+		// worst case : every case is a node, plus a filler for each gap too long
+		byte[] pairs = new byte[2 * (parameter.length() + parameter.length() / LevelPack.MAX_GAP + 1)];
+		int nodeCount = 0;
+		int gap = 0;
+		boolean[] colors = new boolean[256];
+		int colorCount = 0;
+		
+		for (int index = 0; index < parameter.length(); index++) {
+			char ch = parameter.charAt(index);
+			if (ch == '0') {
+				gap++;
+				if (gap == LevelPack.MAX_GAP) {
+					pairs[2 * nodeCount] = (byte) gap;
+					pairs[2 * nodeCount + 1] = 0;
+					nodeCount++;
+					gap = 0;
+				}
+			} else {
+				pairs[2 * nodeCount] = (byte) gap;
+				pairs[2 * nodeCount + 1] = (byte) ch;
+				nodeCount++;
+				gap = 0;
+				
+				if (!colors[ch & 0xFF]) colorCount++;
+				colors[ch & 0xFF] = true;
+			}
+		}
+		
+		byte[] entry = new byte[LevelPack.ENTRY_HEADER_SIZE + 2 * nodeCount];
+		entry[0] = (byte) squareLength;
+		entry[1] = (byte) colorCount;
+		entry[2] = (byte) difficulty;
+		entry[3] = (byte) (hasChecksum ? LevelPack.FLAG_CHECKSUM : 0);
+		entry[4] = (byte) (checksum >>> 24);
+		entry[5] = (byte) (checksum >>> 16);
+		entry[6] = (byte) (checksum >>> 8);
+		entry[7] = (byte) checksum;
+		entry[8] = (byte) (nodeCount >>> 8);
+		entry[9] = (byte) nodeCount;
+		System.arraycopy(pairs, 0, entry, LevelPack.ENTRY_HEADER_SIZE, 2 * nodeCount);
+		
+		return entry;
+	}
+
+}
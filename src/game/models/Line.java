@@ -1,7 +1,6 @@
 package game.models;
 
-import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Line
@@ -14,7 +13,11 @@ import java.util.Stack;
 public class Line {
 
 	private final LineColor lineColor;
-	private final Stack<Case> cases = new Stack<Case>(); // line path
+	private int[] path = new int[16]; // line path, as indices of its cases in the level (see Level.getIndex)
+	private int size = 0;
+	private Level level; // is not null once the Line is added to a Level, which resolves its path and counts its single and connected lines
+	private boolean single; // state last reported to the level
+	private boolean connected; // state last reported to the level
 	public Line(LineColor lineColor) {
 		this.lineColor = lineColor;
 	}
@@ -22,36 +25,140 @@ public class Line {
 	public LineColor getLineColor() {
 		return lineColor;
 	}
-
-	public Stack<Case> getCases() {
-		return cases;
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @param position
+	 * @return the case at position in the line path
+	 */
+	public Case getCase(int position) {
+		return this.getLevel().getCase(this.path[position]);
+	}
+	
+	/**
+	 * @param position
+	 * @return the index in the level of the case at position in the line path
+	 */
+	public int getIndex(int position) {
+		return this.path[position];
+	}
+	
+	public Case getFirst() {
+		return this.size > 0 ? this.getCase(0) : null;
+	}
+	
+	public Case getLast() {
+		return this.size > 0 ? this.getCase(this.size - 1) : null;
 	}
 	
 	public void reset(Case case1) {
-		for (Case case2 : this.getCases()) {
-			case2.setLine(null);
+		this.truncate(0);
+		if (case1 != null) this.push(case1);
+		this.update();
+	}
+	
+	public void add(Case next) {
+		this.push(next);
+		this.update();
+	}
+	
+	/**
+	 * Removes origin and every case after it from the line path
+	 * @param origin
+	 */
+	public void removeFrom(Case origin) {
+		if (origin.getLine() == this) {
+			this.truncate(origin.getPosition());
+			this.update();
 		}
+	}
+	
+	private void push(Case next) {
+		if (this.level != null) this.level.getHistory().pushing(this);
+		if (this.size == this.path.length) this.path = Arrays.copyOf(this.path, 2 * this.size);
 		
-		this.getCases().clear();
-		if (case1 != null) {
-			this.cases.push(case1);
-			case1.setLine(this);
+		this.path[this.size] = next.getLevel().getIndex(next);
+		next.setPosition(this.size);
+		this.size++;
+		next.setLine(this);
+	}
+	
+	/**
+	 * Removes every case from position to the end of the line path
+	 * @param position
+	 */
+	private void truncate(int position) {
+		if (this.level != null) this.level.getHistory().truncating(this, position);
+		for (int k = this.size - 1; k >= position; k--) {
+			Case case1 = this.getCase(k);
+			case1.setPosition(-1);
+			case1.setLine(null);
 		}
+		this.size = Math.min(this.size, position);
 	}
 	
-	public void add(Case next) {
-		this.cases.push(next);
-		next.setLine(this);
+	/**
+	 * Sets the path back to what it was, called by the history of the level when a move is undone or redone
+	 * @param position first position to change, every case from it is removed
+	 * @param indices
+	 * @param from first index of the cases to add after position in indices
+	 * @param count number of cases to add
+	 */
+	void restore(int position, short[] indices, int from, int count) {
+		this.truncate(position);
+		for (int k = 0; k < count; k++) this.push(this.level.getCase(indices[from + k]));
+		this.update();
 	}
 	
-	public void removeFrom(Case origin) {
-		int index = this.getCases().indexOf(origin);
-		if (index > -1) {
-			// to avoid comodification we clone the removal list
-			for (Case case1 : new ArrayList<Case>(this.getCases().subList(index, this.getCases().size()))) {
-				case1.setLine(null);
-				this.getCases().remove(case1);
-			}
+	/**
+	 * Moves the path to the row stride of a new level square length, called by the level when it is resized
+	 * @param oldLength
+	 * @param newLength
+	 */
+	void reindex(int oldLength, int newLength) {
+		for (int k = 0; k < this.size; k++) {
+			this.path[k] = (this.path[k] / oldLength) * newLength + this.path[k] % oldLength;
+		}
+	}
+	
+	/**
+	 * @return true if the line goes from one node of its color to the other
+	 */
+	public boolean isConnected() {
+		if (this.size < 2) return false;
+		
+		Case first = this.getFirst();
+		Case last = this.getLast();
+		return this.getLineColor().equals(first.getLineColor()) && this.getLineColor().equals(last.getLineColor());
+	}
+	
+	public Level getLevel() {
+		return level;
+	}
+	
+	void setLevel(Level level) {
+		if (this.level != null) this.level.countLine(this.single ? -1 : 0, this.connected ? -1 : 0);
+		this.level = level;
+		this.single = false;
+		this.connected = false;
+		this.update();
+	}
+	
+	/**
+	 * Reports changes of the single and connected states of the line to its level
+	 */
+	void update() {
+		if (this.level == null) return;
+		
+		boolean single = this.size == 1;
+		boolean connected = this.isConnected();
+		if (single != this.single || connected != this.connected) {
+			this.level.countLine((single ? 1 : 0) - (this.single ? 1 : 0), (connected ? 1 : 0) - (this.connected ? 1 : 0));
+			this.single = single;
+			this.connected = connected;
 		}
 	}
 	
@@ -32,6 +32,8 @@ public enum LineColor {
 	Y(241, 196, 15),
 	D(253, 150, 68);
 
+	private static final LineColor[] CODES = LineColor.values(); // cached to decode codes without cloning values() each time
+	
 	private final Color color;
 	private LineColor(int r, int g, int b) {
 		this.color = new Color(r, g, b);
@@ -40,5 +42,20 @@ public enum LineColor {
 	public Color getColor() {
 		return color;
 	}
+	
+	/**
+	 * @return the compact code of this color, used by flat level arrays (0 is reserved for "no color")
+	 */
+	public byte getCode() {
+		return (byte) (this.ordinal() + 1);
+	}
+	
+	/**
+	 * @param code
+	 * @return the LineColor of the given compact code, null for 0
+	 */
+	public static LineColor fromCode(int code) {
+		return code == 0 ? null : LineColor.CODES[code - 1];
+	}
 
 }
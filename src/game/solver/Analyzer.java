@@ -0,0 +1,142 @@
+package game.solver;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import game.solver.Solution.Status;
+
+/**
+ * Service counting the solutions of levels and rating their difficulty, results are cached by parameter string
+ *
+ * The difficulty (1 to MAX_DIFFICULTY) grows with the share of the level forced moves cannot fill on their own,
+ * the number of guesses, the depth of the deepest guess and the number of moves to choose from at each guess.
+ * Only levels proven to have a single solution are rated, a search cut short by its budget leaves the level UNRATED.
+ * It fits in a byte, 0 meaning unknown, so it can be stored next to each level (see LevelPack).
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Analyzer {
+
+	public static final int DEFAULT_CAP = 2;
+	public static final long DEFAULT_NODE_LIMIT = 2000000;
+
+	public static final int UNKNOWN = 0;
+	public static final int MAX_DIFFICULTY = 100;
+	public static final int UNRATED = 253; // the search ran out of budget before proving a single solution
+	public static final int MULTIPLE = 254; // several solutions
+	public static final int UNSOLVABLE = 255;
+
+	private static final String[] RATINGS = { "facile", "moyen", "difficile", "expert" };
+
+	private final int cap;
+	private final long nodeLimit;
+
+	private final ConcurrentHashMap<String, Solution> solutions = new ConcurrentHashMap<String, Solution>();
+	private final Set<String> pending = ConcurrentHashMap.newKeySet(); // levels queued for a background analysis
+	private ExecutorService executor;
+
+	public Analyzer() {
+		this(Analyzer.DEFAULT_CAP, Analyzer.DEFAULT_NODE_LIMIT);
+	}
+
+	/**
+	 * @param cap number of solutions after which counting stops, 2 is enough to tell unique levels
+	 * @param nodeLimit node budget of each analysis, levels exceeding it are UNRATED
+	 */
+	public Analyzer(int cap, long nodeLimit) {
+		this.cap = cap;
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * Solves a level, unless it has already been, can be called from any thread
+	 * @param parameter
+	 * @return the search result, with the search profile and the paths of the first solution found
+	 */
+	public Solution analyze(String parameter) {
+		Solution solution = this.solutions.get(parameter);
+		if (solution != null) return solution;
+
+		Solver solver = new Solver(parameter);
+		solver.setNodeLimit(this.nodeLimit);
+		solution = solver.count(this.cap);
+
+		Solution previous = this.solutions.putIfAbsent(parameter, solution);
+		return previous != null ? previous : solution;
+	}
+
+	/**
+	 * Analyzes a level on a background thread, unless it is already analyzed or queued
+	 * @param parameter
+	 * @param callback called on the background thread with the result
+	 */
+	public void analyzeLater(String parameter, Consumer<Solution> callback) {
+		if (this.solutions.containsKey(parameter) || !this.pending.add(parameter)) return;
+
+		this.getExecutor().execute(() -> {
+			try {
+
+				callback.accept(this.analyze(parameter));
+
+			} finally {
+				this.pending.remove(parameter);
+			}
+		});
+	}
+
+	/**
+	 * @param parameter
+	 * @return the cached result, null if the level has not been analyzed yet
+	 */
+	public Solution getSolution(String parameter) {
+		return this.solutions.get(parameter);
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (this.executor == null) {
+			this.executor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Levels analyzer");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			});
+		}
+		return this.executor;
+	}
+
+	/**
+	 * @param solution result of a search counting up to 2 solutions at least
+	 * @return the difficulty of the level, from 1 to MAX_DIFFICULTY, UNRATED, MULTIPLE or UNSOLVABLE
+	 */
+	public static int getDifficulty(Solution solution) {
+		if (solution.getStatus().equals(Status.UNSOLVABLE)) return Analyzer.UNSOLVABLE;
+		if (solution.getCount() > 1) return Analyzer.MULTIPLE;
+		if (!solution.isUnique()) return solution.getStatus().equals(Status.TIMEOUT) ? Analyzer.UNRATED : Analyzer.UNKNOWN;
+
+		double score = 30 * (1 - solution.getPropagated())
+				+ 7 * Math.log(1 + solution.getGuesses()) / Math.log(2)
+				+ 1.5 * solution.getDepth()
+				+ 10 * (solution.getBranching() - 1);
+
+		return (int) Math.max(1, Math.min(Analyzer.MAX_DIFFICULTY, Math.round(score)));
+	}
+
+	/**
+	 * @param difficulty
+	 * @return a short label of the difficulty, null if it is unknown
+	 */
+	public static String getRating(int difficulty) {
+		if (difficulty == Analyzer.UNKNOWN) return null;
+		if (difficulty == Analyzer.UNRATED) return "non class";
+		if (difficulty == Analyzer.MULTIPLE) return "multiple";
+		if (difficulty == Analyzer.UNSOLVABLE) return "impossible";
+		return Analyzer.RATINGS[Math.min(Analyzer.RATINGS.length - 1, (difficulty - 1) * Analyzer.RATINGS.length / Analyzer.MAX_DIFFICULTY)];
+	}
+
+}
@@ -0,0 +1,459 @@
+package game.solver;
+
+import java.util.Arrays;
+
+import game.models.Level;
+import game.models.Line;
+import game.models.LineColor;
+
+/**
+ * Compact board of a level made of bitsets : the cases of each color, the free cases and the open ends of unfinished lines
+ *
+ * Rows are stored one after the other with a guard bit after each of them, so shifting a mask by one bit or by a row
+ * gives the neighbors of its cases without wrapping from one row to the next. A 25x25 board holds in 11 longs per mask,
+ * copying it or filling a region only costs a few word operations and no Case or Line is involved.
+ *
+ * Masks given to the bulk operations must have getWordCount() longs, their guard bits are always cleared.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Bitboard {
+
+	private static final int COLORS = LineColor.values().length + 1;
+
+	private final int length;
+	private final int stride; // bits per row, guard bit included
+	private final int words;
+
+	private final long[] cells; // every case of the board
+	private final long[] free;
+	private final long[] ends; // cases a line can still grow from : the last case of each unfinished line and its other node
+	private final long[] nodes;
+	private final long[][] colors; // cases of each LineColor code, nodes included, null if the color is not on the board
+
+	public Bitboard(int length) {
+		this.length = length;
+		this.stride = length + 1;
+		this.words = (length * this.stride + 63) / 64;
+
+		this.cells = new long[this.words];
+		long row = (1L << length) - 1;
+		for (int ligne = 0; ligne < length; ligne++) {
+			int bit = ligne * this.stride;
+			this.cells[bit >>> 6] |= row << bit;
+			if ((bit & 63) + length > 64) this.cells[(bit >>> 6) + 1] |= row >>> (64 - (bit & 63));
+		}
+
+		this.free = this.cells.clone();
+		this.ends = new long[this.words];
+		this.nodes = new long[this.words];
+		this.colors = new long[Bitboard.COLORS][];
+	}
+
+	private Bitboard(Bitboard board) {
+		this.length = board.length;
+		this.stride = board.stride;
+		this.words = board.words;
+		this.cells = board.cells; // never written
+		this.free = board.free.clone();
+		this.ends = board.ends.clone();
+		this.nodes = board.nodes.clone();
+		this.colors = new long[Bitboard.COLORS][];
+		for (int code = 1; code < Bitboard.COLORS; code++) {
+			if (board.colors[code] != null) this.colors[code] = board.colors[code].clone();
+		}
+	}
+
+	/**
+	 * @param parameter (see Level)
+	 * @return the board of the nodes of the parameter, without building its level
+	 */
+	public static Bitboard of(String parameter) {
+		int length = (int) Math.ceil(Math.sqrt(parameter.length()));
+		Bitboard board = new Bitboard(length);
+
+		// characters named after a LineColor keep it, the others take the first colors left (see Level.generateLineCodes())
+		byte[] codes = new byte[Character.MAX_VALUE + 1];
+		boolean[] used = new boolean[Bitboard.COLORS];
+		for (int index = 0; index < parameter.length(); index++) {
+			char ch = parameter.charAt(index);
+			if (ch == '0' || codes[ch] != 0) continue;
+
+			for (LineColor lineColor : LineColor.values()) {
+				if (lineColor.name().charAt(0) == ch && lineColor.name().length() == 1) {
+					codes[ch] = lineColor.getCode();
+					used[codes[ch]] = true;
+				}
+			}
+		}
+		for (int index = 0; index < parameter.length(); index++) {
+			char ch = parameter.charAt(index);
+			if (ch == '0' || codes[ch] != 0) continue;
+
+			for (int code = 1; code < Bitboard.COLORS && codes[ch] == 0; code++) {
+				if (!used[code]) {
+					codes[ch] = (byte) code;
+					used[code] = true;
+				}
+			}
+			if (codes[ch] == 0) codes[ch] = -1; // no color left, the character is ignored as it is by the level
+		}
+
+		for (int index = 0; index < parameter.length(); index++) {
+			byte code = codes[parameter.charAt(index)];
+			if (code > 0) board.setNode(index, code);
+		}
+		board.resetEnds();
+		return board;
+	}
+
+	/**
+	 * @param level
+	 * @return the board of the nodes and the lines of the level
+	 */
+	public static Bitboard of(Level level) {
+		Bitboard board = new Bitboard(level.getSquareLength());
+
+		for (int index = 0; index < level.getCaseCount(); index++) {
+			byte code = level.getNode(index);
+			if (code != 0) board.setNode(index, code);
+		}
+		board.resetEnds();
+
+		for (Line line : level.getLines().values()) {
+			if (line.size() == 0) continue;
+
+			byte code = line.getLineColor().getCode();
+			if (board.colors[code] == null) continue;
+
+			int first = board.getBit(line.getIndex(0));
+			int last = board.getBit(line.getIndex(line.size() - 1));
+			for (int position = 1; position < line.size(); position++) board.take(code, line.getIndex(position));
+
+			// the line grows from its last case, it is finished when it reached the other node
+			Bitboard.clear(board.ends, first);
+			if (Bitboard.get(board.nodes, last) && last != first) {
+				board.removeEnds(code);
+			} else {
+				Bitboard.set(board.ends, last);
+			}
+		}
+		return board;
+	}
+
+	private void setNode(int index, byte code) {
+		int bit = this.getBit(index);
+		if (this.colors[code] == null) this.colors[code] = new long[this.words];
+		Bitboard.set(this.colors[code], bit);
+		Bitboard.set(this.nodes, bit);
+		Bitboard.clear(this.free, bit);
+	}
+
+	/**
+	 * Every node is an end
+	 */
+	private void resetEnds() {
+		System.arraycopy(this.nodes, 0, this.ends, 0, this.words);
+	}
+
+	/**
+	 * Gives a case to a color, as a line going through it
+	 * @param code
+	 * @param index
+	 */
+	public void take(byte code, int index) {
+		int bit = this.getBit(index);
+		Bitboard.clear(this.free, bit);
+		Bitboard.set(this.colors[code], bit);
+	}
+
+	/**
+	 * Gives back a case taken by a line
+	 * @param code
+	 * @param index
+	 */
+	public void release(byte code, int index) {
+		int bit = this.getBit(index);
+		Bitboard.set(this.free, bit);
+		Bitboard.clear(this.colors[code], bit);
+	}
+
+	/**
+	 * Clears the ends of a finished color
+	 * @param code
+	 */
+	private void removeEnds(byte code) {
+		for (int word = 0; word < this.words; word++) this.ends[word] &= ~this.colors[code][word];
+	}
+
+	/**
+	 * @return a copy sharing nothing written with this board
+	 */
+	public Bitboard copy() {
+		return new Bitboard(this);
+	}
+
+	/**
+	 * @return the parameter of the nodes of the board (see Level)
+	 */
+	public String toParameter() {
+		char[] parameter = new char[this.length * this.length];
+		Arrays.fill(parameter, '0');
+
+		for (int code = 1; code < Bitboard.COLORS; code++) {
+			if (this.colors[code] == null) continue;
+
+			char letter = LineColor.fromCode(code).name().charAt(0);
+			for (int index = 0; index < parameter.length; index++) {
+				int bit = this.getBit(index);
+				if (Bitboard.get(this.nodes, bit) && Bitboard.get(this.colors[code], bit)) parameter[index] = letter;
+			}
+		}
+		return new String(parameter);
+	}
+
+	/**
+	 * @return a level of the nodes of the board, lines are not drawn
+	 */
+	public Level toLevel() {
+		return new Level(this.toParameter());
+	}
+
+	/**
+	 * @param index row-major index of a case (see Level)
+	 * @return the bit of the case
+	 */
+	public int getBit(int index) {
+		return index + index / this.length;
+	}
+
+	/**
+	 * @param bit
+	 * @return the row-major index of the case of a bit
+	 */
+	public int getIndex(int bit) {
+		return bit - bit / this.stride;
+	}
+
+	/**
+	 * @return a mask of this board with no case
+	 */
+	public long[] newMask() {
+		return new long[this.words];
+	}
+
+	/**
+	 * Sets result to the cases next to a case of mask, cases of mask included if they are next to each other
+	 * @param mask
+	 * @param result other than mask
+	 */
+	public void getNeighbors(long[] mask, long[] result) {
+		for (int word = 0; word < this.words; word++) {
+			result[word] = (this.shiftUp(mask, word, 1) | this.shiftDown(mask, word, 1) | this.shiftUp(mask, word, this.stride) | this.shiftDown(mask, word, this.stride)) & this.cells[word];
+		}
+	}
+
+	/**
+	 * Sets result to the cases of within connected to seed
+	 * Runs of cases along a row are filled at once with carries, rows are then joined by shifting, until nothing changes
+	 * @param seed
+	 * @param within
+	 * @param result other than within
+	 */
+	public void fill(long[] seed, long[] within, long[] result) {
+		for (int word = 0; word < this.words; word++) result[word] = seed[word] & within[word];
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+
+			// runs towards the end of the row : adding the seed to the run clears every bit it carries through
+			long carry = 0;
+			for (int word = 0; word < this.words; word++) {
+				long run = within[word];
+				long sum = run + result[word] + carry;
+				carry = Long.compareUnsigned(sum, run) < 0 || (carry != 0 && sum == run) ? 1 : 0;
+				result[word] |= (sum ^ run) & run;
+			}
+
+			// runs towards the start of the row, the same with reversed bits
+			carry = 0;
+			for (int word = this.words - 1; word >= 0; word--) {
+				long run = Long.reverse(within[word]);
+				long sum = run + Long.reverse(result[word]) + carry;
+				carry = Long.compareUnsigned(sum, run) < 0 || (carry != 0 && sum == run) ? 1 : 0;
+				result[word] |= Long.reverse((sum ^ run) & run);
+			}
+
+			for (int word = 0; word < this.words; word++) {
+				long grown = result[word] | ((this.shiftUp(result, word, this.stride) | this.shiftDown(result, word, this.stride)) & within[word]);
+				if (grown != result[word]) {
+					result[word] = grown;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param result set to the free cases with less than two free neighbors or ends, which no line can go through
+	 * @return true if there is any
+	 */
+	public boolean getDeadCases(long[] result) {
+		return this.getCases(2, result);
+	}
+
+	/**
+	 * @param result set to the free cases with less than three free neighbors or ends, a line going through them has at most one way in and out
+	 * @return true if there is any
+	 */
+	public boolean getNarrowCases(long[] result) {
+		return this.getCases(3, result);
+	}
+
+	/**
+	 * @param open 2 or 3
+	 * @param result set to the free cases with less than open free neighbors or ends
+	 * @return true if there is any
+	 */
+	private boolean getCases(int open, long[] result) {
+		boolean found = false;
+		for (int word = 0; word < this.words; word++) {
+			long up = this.shiftDown(this.free, word, this.stride) | this.shiftDown(this.ends, word, this.stride);
+			long down = this.shiftUp(this.free, word, this.stride) | this.shiftUp(this.ends, word, this.stride);
+			long left = this.shiftUp(this.free, word, 1) | this.shiftUp(this.ends, word, 1);
+			long right = this.shiftDown(this.free, word, 1) | this.shiftDown(this.ends, word, 1);
+
+			long enough = open == 2 ? (up & down) | (left & right) | ((up | down) & (left | right)) : (up & down & (left | right)) | (left & right & (up | down));
+			result[word] = this.free[word] & ~enough;
+			found |= result[word] != 0;
+		}
+		return found;
+	}
+
+	/**
+	 * Sets result to the free regions touching no color by both of its ends, which no line can fill
+	 * @param result other than the masks of the board
+	 * @return the number of stranded regions
+	 */
+	public int getStrandedRegions(long[] result) {
+		long[] left = this.free.clone();
+		long[] seed = new long[this.words];
+		long[] region = new long[this.words];
+		long[] border = new long[this.words];
+		Arrays.fill(result, 0);
+
+		int stranded = 0;
+		for (int word = 0; word < this.words; word++) {
+			while (left[word] != 0) {
+				seed[word] = Long.lowestOneBit(left[word]);
+				this.fill(seed, left, region);
+				seed[word] = 0;
+
+				this.getNeighbors(region, border);
+				if (!this.isFillable(border)) {
+					for (int k = 0; k < this.words; k++) result[k] |= region[k];
+					stranded++;
+				}
+				for (int k = 0; k < this.words; k++) left[k] &= ~region[k];
+			}
+		}
+		return stranded;
+	}
+
+	/**
+	 * @param border
+	 * @return true if both ends of a color are in border
+	 */
+	private boolean isFillable(long[] border) {
+		for (int code = 1; code < Bitboard.COLORS; code++) {
+			if (this.colors[code] == null) continue;
+
+			int count = 0;
+			for (int word = 0; word < this.words; word++) count += Long.bitCount(border[word] & this.ends[word] & this.colors[code][word]);
+			if (count >= 2) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param mask
+	 * @param word
+	 * @param shift between 1 and 63
+	 * @return the word of mask moved shift bits towards the end of the board
+	 */
+	private long shiftUp(long[] mask, int word, int shift) {
+		return (mask[word] << shift) | (word > 0 ? mask[word - 1] >>> (64 - shift) : 0);
+	}
+
+	/**
+	 * @param mask
+	 * @param word
+	 * @param shift between 1 and 63
+	 * @return the word of mask moved shift bits towards the start of the board
+	 */
+	private long shiftDown(long[] mask, int word, int shift) {
+		return (mask[word] >>> shift) | (word + 1 < this.words ? mask[word + 1] << (64 - shift) : 0);
+	}
+
+	public static boolean get(long[] mask, int bit) {
+		return (mask[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	public static void set(long[] mask, int bit) {
+		mask[bit >>> 6] |= 1L << bit;
+	}
+
+	public static void clear(long[] mask, int bit) {
+		mask[bit >>> 6] &= ~(1L << bit);
+	}
+
+	/**
+	 * @param mask
+	 * @return the number of cases of mask
+	 */
+	public static int count(long[] mask) {
+		int count = 0;
+		for (long word : mask) count += Long.bitCount(word);
+		return count;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getWordCount() {
+		return words;
+	}
+
+	/**
+	 * @return the mask of every case, must not be written
+	 */
+	public long[] getCells() {
+		return cells;
+	}
+
+	public long[] getFree() {
+		return free;
+	}
+
+	public long[] getEnds() {
+		return ends;
+	}
+
+	public long[] getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @param code
+	 * @return the cases of the color, null if it is not on the board
+	 */
+	public long[] getColor(int code) {
+		return this.colors[code];
+	}
+
+}
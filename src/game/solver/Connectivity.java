@@ -0,0 +1,367 @@
+package game.solver;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import game.models.Level;
+import game.models.Line;
+import game.models.LineColor;
+
+/**
+ * Dead ends of the lines of a level, kept up to date as the lines are drawn
+ *
+ * Free cases, without node nor line, hold the label of their region, and labels of regions joined since are merged
+ * by a union-find forest. A case given back joins the regions of its neighbors. A case taken by a line only splits
+ * its region if its free neighbors are not joined around it : the parts cut off are then flooded with new labels.
+ * Two dead ends are then found, as the Solver does :
+ * - a line whose end and other node do not touch each other nor a common region can not be finished
+ * - a region that no unfinished line touches with both its end and its other node can not be filled
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Connectivity {
+
+	private static final int COLORS = LineColor.values().length + 1;
+
+	// the 8 cases around a case, in turn, as row and column steps
+	private static final int[] AROUND_I = { -1, -1, -1, 0, 1, 1, 1, 0 };
+	private static final int[] AROUND_J = { -1, 0, 1, 1, 1, 0, -1, -1 };
+
+	private Level level; // level the regions were built for, null before the first update
+	private int boardVersion;
+	private int length;
+	private int size;
+	private boolean[] free = new boolean[0]; // cases without node nor line at the last update
+	private int[] labels = new int[0]; // label of the region of each free case
+	private int[] parents = new int[0]; // union-find forest of the labels
+	private int labelCount;
+	private int regionCount;
+	private int[] floods = new int[0]; // last flood each case was reached by
+	private int flood;
+	private int[] checks = new int[0]; // last check each label was found usable by
+	private int check;
+	private int[] stack = new int[0]; // worklist of the floods
+	private final int[][] ends = new int[Connectivity.COLORS][]; // nodes of each color code, null if it has not two of them
+	private final int[] roots = new int[4];
+	private final boolean[] around = new boolean[8];
+
+	private final List<LineColor> blocked = new ArrayList<LineColor>();
+	private final BitSet deadCases = new BitSet();
+	private final BitSet previous = new BitSet();
+
+	/**
+	 * Finds the dead ends of a level, only looking again at the cases whose line changed if it is the level of the last update
+	 * The line changes of the level are cleared, the cases whose dead end state changed are marked as changed so they are drawn again.
+	 * @param level
+	 */
+	public void update(Level level) {
+		if (level != this.level || level.getBoardVersion() != this.boardVersion || level.getCaseCount() != this.size) {
+			this.build(level);
+		} else {
+			BitSet changes = level.getLineChanges();
+			for (int index = changes.nextSetBit(0); index >= 0 && index < this.size; index = changes.nextSetBit(index + 1)) {
+				if (this.labelCount + 4 > this.parents.length) { // labels are only given back by a whole build
+					this.build(level);
+					break;
+				}
+
+				boolean free = level.getNode(index) == 0 && level.getOwner(index) == 0;
+				if (free == this.free[index]) continue;
+
+				if (free) this.give(index);
+				else this.take(index);
+			}
+		}
+
+		level.clearLineChanges();
+		this.check();
+	}
+
+	/**
+	 * Builds the regions of every free case of a level
+	 * @param level
+	 */
+	private void build(Level level) {
+		if (level != this.level) {
+			this.previous.clear();
+			this.deadCases.clear();
+		}
+		this.level = level;
+		this.boardVersion = level.getBoardVersion();
+		this.length = level.getSquareLength();
+		this.size = level.getCaseCount();
+
+		if (this.free.length < this.size) {
+			this.free = new boolean[this.size];
+			this.labels = new int[this.size];
+			this.floods = new int[this.size];
+			this.stack = new int[this.size];
+			this.parents = new int[4 * this.size];
+			this.checks = new int[4 * this.size];
+		}
+
+		for (int code = 0; code < Connectivity.COLORS; code++) this.ends[code] = null;
+		boolean[] extra = new boolean[Connectivity.COLORS]; // colors with more than two nodes, as levels in creation may have
+		for (int index = 0; index < this.size; index++) {
+			byte code = level.getNode(index);
+			if (code == 0) continue;
+
+			if (this.ends[code] == null) this.ends[code] = new int[] { index, -1 };
+			else if (this.ends[code][1] < 0) this.ends[code][1] = index;
+			else extra[code] = true;
+		}
+		for (int code = 0; code < Connectivity.COLORS; code++) {
+			if (extra[code] || (this.ends[code] != null && this.ends[code][1] < 0)) this.ends[code] = null;
+		}
+
+		for (int index = 0; index < this.size; index++) this.free[index] = level.getNode(index) == 0 && level.getOwner(index) == 0;
+
+		this.labelCount = 0;
+		this.regionCount = 0;
+		this.flood++;
+		for (int index = 0; index < this.size; index++) {
+			if (this.free[index] && this.floods[index] != this.flood) {
+				this.fill(index, this.newLabel());
+				this.regionCount++;
+			}
+		}
+	}
+
+	/**
+	 * Joins a case given back to the regions of its neighbors
+	 * @param index
+	 */
+	private void give(int index) {
+		this.free[index] = true;
+
+		int label = -1;
+		int count = this.getRoots(index);
+		for (int k = 0; k < count; k++) {
+			if (label < 0) label = this.roots[k];
+			else this.parents[this.roots[k]] = label;
+		}
+
+		if (label < 0) label = this.newLabel();
+		this.labels[index] = label;
+		this.regionCount += 1 - count;
+	}
+
+	/**
+	 * Takes a case from its region, which is split if its free neighbors are not joined around it
+	 * @param index
+	 */
+	private void take(int index) {
+		this.free[index] = false;
+
+		int i = index / this.length;
+		int j = index % this.length;
+		int sides = 0;
+		for (int k = 0; k < 8; k++) {
+			int ni = i + Connectivity.AROUND_I[k];
+			int nj = j + Connectivity.AROUND_J[k];
+			this.around[k] = ni >= 0 && nj >= 0 && ni < this.length && nj < this.length && this.free[ni * this.length + nj];
+			if (k % 2 == 1 && this.around[k]) sides++;
+		}
+
+		if (sides == 0) {
+			this.regionCount--;
+			return;
+		}
+
+		// runs of free cases around the case holding a side neighbor, which are joined to each other without the case
+		int runs = 0;
+		for (int k = 0; k < 8; k++) {
+			if (!this.around[k] || this.around[(k + 7) % 8]) continue;
+			boolean side = false;
+			for (int l = k; this.around[l % 8] && l < k + 8; l++) side |= l % 2 == 1;
+			if (side) runs++;
+		}
+		if (runs <= 1) return;
+
+		// the side neighbors may still be joined further away : each part found is flooded with a new label but the last one
+		this.flood++;
+		int parts = 0;
+		for (int k = 1; k < 8; k += 2) {
+			if (!this.around[k]) continue;
+			int neighbor = (i + Connectivity.AROUND_I[k]) * this.length + j + Connectivity.AROUND_J[k];
+			if (this.floods[neighbor] == this.flood) continue;
+
+			boolean lastSide = true;
+			for (int l = k + 2; l < 8; l += 2) lastSide &= !this.around[l];
+			if (++parts > 1 && lastSide) break; // the rest of the region is this part, it keeps its label
+			this.fill(neighbor, this.newLabel());
+		}
+		this.regionCount += parts - 1;
+	}
+
+	/**
+	 * Gives a label to the free cases reached from a case, without going through the cases of the current flood
+	 * @param seed
+	 * @param label
+	 */
+	private void fill(int seed, int label) {
+		int count = 0;
+		this.stack[count++] = seed;
+		this.floods[seed] = this.flood;
+		while (count > 0) {
+			int index = this.stack[--count];
+			this.labels[index] = label;
+
+			if (index >= this.length) count = this.push(index - this.length, count);
+			if (index + this.length < this.size) count = this.push(index + this.length, count);
+			if (index % this.length > 0) count = this.push(index - 1, count);
+			if (index % this.length < this.length - 1) count = this.push(index + 1, count);
+		}
+	}
+
+	private int push(int index, int count) {
+		if (this.free[index] && this.floods[index] != this.flood) {
+			this.floods[index] = this.flood;
+			this.stack[count++] = index;
+		}
+		return count;
+	}
+
+	private int newLabel() {
+		int label = this.labelCount++;
+		this.parents[label] = label;
+		return label;
+	}
+
+	/**
+	 * Finds the blocked lines and the regions no line can fill
+	 */
+	private void check() {
+		this.previous.clear();
+		this.previous.or(this.deadCases);
+		this.deadCases.clear();
+		this.blocked.clear();
+		this.check++;
+		int usable = 0;
+
+		for (int code = 1; code < Connectivity.COLORS; code++) {
+			int[] nodes = this.ends[code];
+			if (nodes == null) continue;
+
+			// the end of the line drawn from one node, and the other node
+			Line line = this.level.getLine(LineColor.fromCode(code));
+			int end = nodes[0];
+			int other = nodes[1];
+			if (line != null && line.size() > 0) {
+				if (line.isConnected()) continue;
+				if (line.getIndex(0) == nodes[1]) other = nodes[0];
+				else if (line.getIndex(0) != nodes[0]) continue;
+				end = line.getIndex(line.size() - 1);
+			}
+
+			int count = this.getRoots(end);
+			boolean reachable = this.isNextTo(end, other);
+			for (int k = 0; k < count; k++) {
+				int root = this.roots[k];
+				if (!this.isRootNextTo(root, other)) continue;
+
+				reachable = true;
+				if (this.checks[root] != this.check) {
+					this.checks[root] = this.check;
+					usable++;
+				}
+			}
+
+			if (!reachable) {
+				this.blocked.add(LineColor.fromCode(code));
+				this.deadCases.set(end);
+				this.deadCases.set(other);
+			}
+		}
+
+		// the cases of the regions nobody can use are only looked for when there are some
+		if (usable < this.regionCount) {
+			for (int index = 0; index < this.size; index++) {
+				if (this.free[index] && this.checks[this.find(this.labels[index])] != this.check) this.deadCases.set(index);
+			}
+		}
+
+		this.previous.xor(this.deadCases);
+		for (int index = this.previous.nextSetBit(0); index >= 0; index = this.previous.nextSetBit(index + 1)) this.level.markChanged(index);
+	}
+
+	/**
+	 * Sets roots to the distinct regions next to a case
+	 * @param index
+	 * @return the number of regions found
+	 */
+	private int getRoots(int index) {
+		int count = 0;
+		for (int k = 1; k < 8; k += 2) {
+			int ni = index / this.length + Connectivity.AROUND_I[k];
+			int nj = index % this.length + Connectivity.AROUND_J[k];
+			if (ni < 0 || nj < 0 || ni >= this.length || nj >= this.length || !this.free[ni * this.length + nj]) continue;
+
+			int root = this.find(this.labels[ni * this.length + nj]);
+			boolean found = false;
+			for (int l = 0; l < count; l++) found |= this.roots[l] == root;
+			if (!found) this.roots[count++] = root;
+		}
+		return count;
+	}
+
+	/**
+	 * @param root
+	 * @param index
+	 * @return true if a free neighbor of a case is in the region of root
+	 */
+	private boolean isRootNextTo(int root, int index) {
+		for (int k = 1; k < 8; k += 2) {
+			int ni = index / this.length + Connectivity.AROUND_I[k];
+			int nj = index % this.length + Connectivity.AROUND_J[k];
+			if (ni >= 0 && nj >= 0 && ni < this.length && nj < this.length && this.free[ni * this.length + nj] && this.find(this.labels[ni * this.length + nj]) == root) return true;
+		}
+		return false;
+	}
+
+	private boolean isNextTo(int from, int to) {
+		int distance = Math.abs(from - to);
+		return distance == this.length || (distance == 1 && Math.min(from, to) % this.length < this.length - 1);
+	}
+
+	private int find(int label) {
+		while (this.parents[label] != label) {
+			this.parents[label] = this.parents[this.parents[label]];
+			label = this.parents[label];
+		}
+		return label;
+	}
+
+	/**
+	 * @return the level of the last update, null if there was none
+	 */
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return the cases of the regions no line can fill, and the ends and other nodes of the blocked lines
+	 */
+	public BitSet getDeadCases() {
+		return deadCases;
+	}
+
+	/**
+	 * @return the colors whose line can not reach its other node anymore
+	 */
+	public List<LineColor> getBlocked() {
+		return blocked;
+	}
+
+	/**
+	 * @return true if the level can not be finished from its current lines
+	 */
+	public boolean isDeadEnd() {
+		return !this.deadCases.isEmpty();
+	}
+
+}
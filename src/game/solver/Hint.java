@@ -0,0 +1,88 @@
+package game.solver;
+
+import java.util.Map;
+
+import game.models.Level;
+import game.models.Line;
+import game.models.LineColor;
+import game.solver.Solution.Status;
+
+/**
+ * Next correct move from the Lines of a level, or the reason why there is none
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Hint {
+
+	private final Status status; // SOLVED if there is a move, UNSOLVABLE if the current lines lead to a dead end, TIMEOUT if the budget was exceeded
+	private final LineColor lineColor;
+	private final int from; // case the line must go on from, -1 if there is no move
+	private final int to; // case the line must go to
+	public Hint(Status status, LineColor lineColor, int from, int to) {
+		this.status = status;
+		this.lineColor = lineColor;
+		this.from = from;
+		this.to = to;
+	}
+
+	public Hint(Status status) {
+		this(status, null, -1, -1);
+	}
+
+	/**
+	 * Looks for the next move of a solution the lines of a level agree with
+	 * Paths are matched by their nodes rather than their colors, the solution may come from another Level object of the same parameter
+	 * @param level
+	 * @param solution
+	 * @param preferred color whose move is returned if it has one, null for any
+	 * @return the hint, null if a line strays from the solution
+	 */
+	public static Hint follow(Level level, Solution solution, LineColor preferred) {
+		Hint hint = null;
+
+		for (int[] path : solution.getPaths().values()) {
+			LineColor lineColor = LineColor.fromCode(level.getNode(path[0]));
+			Line line = level.getLine(lineColor);
+			if (lineColor == null || line == null || line.size() > path.length) return null;
+
+			// the line can start at either node of the path
+			boolean reversed = line.size() > 0 && line.getIndex(0) != path[0];
+			for (int position = 0; position < line.size(); position++) {
+				if (line.getIndex(position) != path[reversed ? path.length - 1 - position : position]) return null;
+			}
+
+			if (line.size() == path.length) continue;
+			int from = line.size() > 0 ? line.size() - 1 : 0;
+			int to = line.size() > 0 ? line.size() : 1;
+			if (hint == null || lineColor == preferred) {
+				hint = new Hint(Status.SOLVED, lineColor, path[reversed ? path.length - 1 - from : from], path[reversed ? path.length - 1 - to : to]);
+			}
+		}
+
+		return hint != null ? hint : new Hint(Status.SOLVED);
+	}
+
+	public boolean hasMove() {
+		return this.getFrom() >= 0;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public LineColor getLineColor() {
+		return lineColor;
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public int getTo() {
+		return to;
+	}
+
+}
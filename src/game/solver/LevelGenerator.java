@@ -0,0 +1,522 @@
+package game.solver;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import game.models.Level;
+import game.models.LineColor;
+import game.solver.Solution.Status;
+
+/**
+ * Generator of random levels having a single solution
+ *
+ * A random path visiting every case is built from a zigzag path shuffled with backbite moves,
+ * then cut in segments of at least MIN_SEGMENT_LENGTH cases that never touch themselves, one per LineColor :
+ * the segment ends are the nodes of the level. Big boards are covered with fewer segments by letting them take over each other.
+ * Levels having several solutions are repaired by splitting a segment where another solution goes elsewhere,
+ * levels the Solver cannot settle within its node budget by splitting one where it had to guess, up to MAX_REPAIRS times.
+ * Everything only depends on the seed, the same seed always gives the same level.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class LevelGenerator {
+
+	public static final int MIN_SEGMENT_LENGTH = 3;
+	public static final long DEFAULT_NODE_LIMIT = 1000;
+	public static final int DEFAULT_ATTEMPTS = 500;
+	public static final long DEFAULT_TIMEOUT = 30000;
+	private static final int MIX_FACTOR = 16; // backbite moves per case of the board
+	private static final int COVER_FACTOR = 1000; // moves per case of the board reshaping the segments
+	private static final int MAX_REPAIRS = 20; // segments split in a level before another path is tried
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private final int length;
+	private final int size;
+
+	private final int[] path; // cases in visiting order
+	private final int[] positions; // position of each case in the path
+	private final int[] neighbors = new int[4];
+
+	private final int[][] segments; // cases of each segment of the path in order, null for free segments
+	private final int[] owners; // segment of each case
+	private final int[] orders; // position of each case in its segment
+	private int segmentCount;
+	private final LineColor[] palette = new LineColor[LineColor.values().length]; // color of each segment
+
+	private long nodeLimit = LevelGenerator.DEFAULT_NODE_LIMIT;
+	private int attempts = LevelGenerator.DEFAULT_ATTEMPTS;
+	private long timeout = LevelGenerator.DEFAULT_TIMEOUT; // in milliseconds, 0 for no limit
+	private int tries; // paths tried by the last generation
+
+	public LevelGenerator(int length) {
+		if (length < Level.MIN_SQUARE_LENGTH || length > Level.MAX_SQUARE_LENGTH) throw new IllegalArgumentException("Square length must be between " + Level.MIN_SQUARE_LENGTH + " and " + Level.MAX_SQUARE_LENGTH);
+
+		this.length = length;
+		this.size = length * length;
+		this.path = new int[this.size];
+		this.positions = new int[this.size];
+		this.segments = new int[this.size / LevelGenerator.MIN_SEGMENT_LENGTH + 1][];
+		this.owners = new int[this.size];
+		this.orders = new int[this.size];
+	}
+
+	/**
+	 * @param seed
+	 * @param board
+	 * @return the seed of the board-th level generated from seed, so boards can be generated in any order on any thread
+	 */
+	public static long getSeed(long seed, long board) {
+		// mixed, otherwise the random sequences of consecutive boards would be the same one shifted by a step
+		long z = seed + (board + 1) * LevelGenerator.GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Generates a level with a single solution
+	 * @param seed
+	 * @return the parameter string of the level, null if no path gave a unique level within the number of attempts or the timeout
+	 */
+	public String generate(long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		long deadline = this.getTimeout() > 0 ? System.nanoTime() + this.getTimeout() * 1000000L : Long.MAX_VALUE;
+
+		for (this.tries = 1; this.tries <= this.getAttempts() && System.nanoTime() < deadline; this.tries++) {
+			this.shuffle(random);
+			this.cut();
+			if (!this.cover(random)) continue;
+			this.pack();
+			this.paint(random);
+
+			for (int repair = 0;; repair++) {
+				String parameter = this.toParameter();
+				Solver solver = new Solver(parameter);
+				solver.setNodeLimit(this.getNodeLimit());
+				Solution solution = solver.count(2);
+				if (solution.isUnique()) return parameter;
+
+				if (repair == LevelGenerator.MAX_REPAIRS || System.nanoTime() >= deadline) break;
+				if (solution.getStatus() == Status.TIMEOUT) {
+					// the cases the Solver had to guess
+					BitSet guessed = solver.getPropagatedCases();
+					guessed.flip(0, this.size);
+					if (!this.repair(random, guessed)) break;
+				} else {
+					// one of the two solutions found may be the one of the segments
+					if (!this.repair(random, this.getStrays(solver.getLastPaths())) && !this.repair(random, this.getStrays(solution.getPaths()))) break;
+				}
+			}
+		}
+
+		this.tries--; // the loop stops one past the last path tried
+		return null;
+	}
+
+	/**
+	 * Builds a random path visiting every case
+	 * @param random
+	 */
+	private void shuffle(SplittableRandom random) {
+		// zigzag through the rows
+		for (int k = 0; k < this.size; k++) {
+			int ligne = k / this.length;
+			int colonne = ligne % 2 == 0 ? k % this.length : this.length - 1 - k % this.length;
+			this.path[k] = ligne * this.length + colonne;
+			this.positions[this.path[k]] = k;
+		}
+
+		for (int move = 0; move < LevelGenerator.MIX_FACTOR * this.size; move++) {
+			this.backbite(random);
+		}
+	}
+
+	/**
+	 * Joins an end of the path to one of its neighbors and breaks the path right before that neighbor,
+	 * which keeps a path visiting every case
+	 * @param random
+	 */
+	private void backbite(SplittableRandom random) {
+		boolean first = random.nextBoolean();
+		int end = first ? this.path[0] : this.path[this.size - 1];
+
+		int count = this.getNeighbors(end);
+		int neighbor = this.neighbors[random.nextInt(count)];
+		int position = this.positions[neighbor];
+
+		if (first) {
+			if (position == 1) return;
+			this.reverse(0, position - 1);
+		} else {
+			if (position == this.size - 2) return;
+			this.reverse(position + 1, this.size - 1);
+		}
+	}
+
+	/**
+	 * Reverses the path between two positions, both included
+	 * @param from
+	 * @param to
+	 */
+	private void reverse(int from, int to) {
+		while (from < to) {
+			int swap = this.path[from];
+			this.path[from] = this.path[to];
+			this.path[to] = swap;
+			this.positions[this.path[from]] = from;
+			this.positions[this.path[to]] = to;
+			from++;
+			to--;
+		}
+	}
+
+	/**
+	 * Fills neighbors with the cases next to a case
+	 * @param index
+	 * @return the number of neighbors
+	 */
+	private int getNeighbors(int index) {
+		int ligne = index / this.length;
+		int colonne = index % this.length;
+		int count = 0;
+
+		if (ligne > 0) this.neighbors[count++] = index - this.length;
+		if (ligne < this.length - 1) this.neighbors[count++] = index + this.length;
+		if (colonne > 0) this.neighbors[count++] = index - 1;
+		if (colonne < this.length - 1) this.neighbors[count++] = index + 1;
+
+		return count;
+	}
+
+	/**
+	 * Cuts the path in segments, each one stopping before it would touch itself : a line passing next to its own cases
+	 * could take a shortcut, which most of the time lets another line spread differently and gives a second solution.
+	 * The last segment may be shorter than MIN_SEGMENT_LENGTH, cover makes it longer.
+	 */
+	private void cut() {
+		Arrays.fill(this.segments, null);
+		this.segmentCount = 0;
+		int start = 0;
+
+		for (int k = 1; k <= this.size; k++) {
+			if (k == this.size || (k - start >= LevelGenerator.MIN_SEGMENT_LENGTH && this.touches(k, start))) {
+				this.setSegment(this.segmentCount++, Arrays.copyOfRange(this.path, start, k));
+				start = k;
+			}
+		}
+	}
+
+	/**
+	 * @param position
+	 * @param start
+	 * @return true if the case at position is next to a case of the segment beginning at start, other than the one before it
+	 */
+	private boolean touches(int position, int start) {
+		int count = this.getNeighbors(this.path[position]);
+		for (int k = 0; k < count; k++) {
+			int other = this.positions[this.neighbors[k]];
+			if (other >= start && other < position - 1) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reshapes the segments until there are no more than colors and none is too short, keeping every segment away from itself.
+	 * Big boards need fewer segments than the path is cut in : an end of a segment takes a neighbor case of another segment,
+	 * joining that segment if the case is its end, or the part of it on one side of the case otherwise,
+	 * as long as the cases it takes do not touch its own.
+	 * @param random
+	 * @return false if the segments could not be reshaped within COVER_FACTOR moves per case
+	 */
+	private boolean cover(SplittableRandom random) {
+		for (int move = 0; move < LevelGenerator.COVER_FACTOR * this.size; move++) {
+			if (this.segmentCount <= LineColor.values().length && !this.hasShortSegment()) return true;
+
+			int taker = random.nextInt(this.segments.length);
+			if (this.segments[taker] == null) continue;
+
+			int[] cases = this.segments[taker];
+			boolean last = random.nextBoolean();
+			int end = last ? cases[cases.length - 1] : cases[0];
+			int count = this.getNeighbors(end);
+			int next = this.neighbors[random.nextInt(count)];
+			int owner = this.owners[next];
+			if (owner == taker) continue;
+
+			int[] taken = this.segments[owner];
+			int order = this.orders[next];
+			if (!last) cases = LevelGenerator.reversed(cases); // the taker goes on from its last case
+
+			if (order == 0 || order == taken.length - 1) {
+				if (order > 0) taken = LevelGenerator.reversed(taken);
+				if (!this.isApart(taker, taken, 0, taken.length, end)) continue;
+
+				this.setSegment(taker, LevelGenerator.joined(cases, taken, 0, taken.length));
+				this.segments[owner] = null;
+				this.segmentCount--;
+			} else {
+				if (random.nextBoolean()) {
+					taken = LevelGenerator.reversed(taken);
+					order = taken.length - 1 - order;
+				}
+				// the part left must stay long enough, unless the segment taken from is too short anyway
+				if (order < LevelGenerator.MIN_SEGMENT_LENGTH || !this.isApart(taker, taken, order, taken.length, end)) continue;
+
+				this.setSegment(taker, LevelGenerator.joined(cases, taken, order, taken.length));
+				this.setSegment(owner, Arrays.copyOf(taken, order));
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Moves the segments to the first ones, one per color
+	 */
+	private void pack() {
+		int slot = 0;
+		for (int segment = 0; segment < this.segments.length; segment++) {
+			if (this.segments[segment] == null) continue;
+
+			if (segment != slot) {
+				this.setSegment(slot, this.segments[segment]);
+				this.segments[segment] = null;
+			}
+			slot++;
+		}
+	}
+
+	/**
+	 * @param paths paths of another solution of the level
+	 * @return the cases the other solution gives to another line than their segment
+	 */
+	private BitSet getStrays(Map<LineColor, int[]> paths) {
+		BitSet strays = new BitSet(this.size);
+		for (Map.Entry<LineColor, int[]> entry : paths.entrySet()) {
+			int segment = this.getSegment(entry.getKey());
+			for (int index : entry.getValue()) {
+				if (this.owners[index] != segment) strays.set(index);
+			}
+		}
+		return strays;
+	}
+
+	/**
+	 * Splits a segment at one of the marked cases, so its nodes tell the Solver more where it went wrong.
+	 * The color this takes is freed beforehand, if they are all used, by joining two segments whose ends touch
+	 * without the joined segment touching itself.
+	 * @param random
+	 * @param marked
+	 * @return false if no segment could be split
+	 */
+	private boolean repair(SplittableRandom random, BitSet marked) {
+		int[] candidates = new int[this.size];
+		int count = 0;
+		for (int index = marked.nextSetBit(0); index >= 0; index = marked.nextSetBit(index + 1)) {
+			int order = this.orders[index];
+			if (order >= LevelGenerator.MIN_SEGMENT_LENGTH - 1 && order < this.segments[this.owners[index]].length - LevelGenerator.MIN_SEGMENT_LENGTH) candidates[count++] = index;
+		}
+		if (count == 0) return false;
+
+		int candidate = candidates[random.nextInt(count)];
+		if (this.segmentCount == LineColor.values().length && !this.join(random, candidate)) return false;
+
+		this.split(this.owners[candidate], this.orders[candidate]);
+		return true;
+	}
+
+	/**
+	 * Joins two segments whose ends touch, if the joined segment does not touch itself
+	 * @param random
+	 * @param kept case whose segment is not joined, so it can still be split
+	 * @return false if no two segments can be joined
+	 */
+	private boolean join(SplittableRandom random, int kept) {
+		int first = random.nextInt(this.segments.length);
+		for (int k = 0; k < this.segments.length; k++) {
+			int taker = (first + k) % this.segments.length;
+			if (this.segments[taker] == null || taker == this.owners[kept]) continue;
+
+			for (int side = 0; side < 2; side++) {
+				int[] cases = side == 0 ? this.segments[taker] : LevelGenerator.reversed(this.segments[taker]);
+				int end = cases[cases.length - 1];
+				int[] nexts = Arrays.copyOf(this.neighbors, this.getNeighbors(end)); // isApart looks at other neighbors
+
+				for (int next : nexts) {
+					int owner = this.owners[next];
+					int[] taken = this.segments[owner];
+					if (owner == taker || owner == this.owners[kept]) continue;
+					if (this.orders[next] == taken.length - 1) taken = LevelGenerator.reversed(taken);
+					else if (this.orders[next] != 0) continue;
+					if (!this.isApart(taker, taken, 0, taken.length, end)) continue;
+
+					this.setSegment(taker, LevelGenerator.joined(cases, taken, 0, taken.length));
+					this.segments[owner] = null;
+					this.segmentCount--;
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Splits a segment after one of its cases, the part after it takes a free segment
+	 * @param segment
+	 * @param order position of the last case of the first part in the segment
+	 */
+	private void split(int segment, int order) {
+		int[] cases = this.segments[segment];
+		int free = 0;
+		while (this.segments[free] != null) free++;
+
+		this.setSegment(segment, Arrays.copyOf(cases, order + 1));
+		this.setSegment(free, Arrays.copyOfRange(cases, order + 1, cases.length));
+		this.segmentCount++;
+	}
+
+	/**
+	 * @param taker segment whose last case is end
+	 * @param cases
+	 * @param from first case looked at
+	 * @param to case after the last one looked at
+	 * @param end
+	 * @return true if no case between from and to is next to a case of the taker, but the one at from next to end
+	 */
+	private boolean isApart(int taker, int[] cases, int from, int to, int end) {
+		for (int k = from; k < to; k++) {
+			int count = this.getNeighbors(cases[k]);
+			for (int n = 0; n < count; n++) {
+				if (this.owners[this.neighbors[n]] == taker && (k != from || this.neighbors[n] != end)) return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean hasShortSegment() {
+		for (int[] cases : this.segments) {
+			if (cases != null && cases.length < LevelGenerator.MIN_SEGMENT_LENGTH) return true;
+		}
+		return false;
+	}
+
+	private void setSegment(int segment, int[] cases) {
+		this.segments[segment] = cases;
+		for (int k = 0; k < cases.length; k++) {
+			this.owners[cases[k]] = segment;
+			this.orders[cases[k]] = k;
+		}
+	}
+
+	/**
+	 * @param lineColor
+	 * @return the segment whose nodes have the color, as given by toParameter
+	 */
+	private int getSegment(LineColor lineColor) {
+		for (int segment = 0; segment < this.segments.length; segment++) {
+			if (this.segments[segment] != null && this.palette[segment] == lineColor) return segment;
+		}
+		return -1;
+	}
+
+	/**
+	 * Places the ends of the segments as nodes, each segment taking the color of its place in the palette
+	 * @return the parameter string of the level
+	 */
+	private String toParameter() {
+		char[] parameter = new char[this.size];
+		Arrays.fill(parameter, '0');
+		for (int segment = 0; segment < this.segments.length; segment++) {
+			int[] cases = this.segments[segment];
+			if (cases == null) continue;
+
+			char letter = this.palette[segment].name().charAt(0);
+			parameter[cases[0]] = letter;
+			parameter[cases[cases.length - 1]] = letter;
+		}
+
+		return new String(parameter);
+	}
+
+	/**
+	 * Shuffles the palette, so the colors of a level do not depend on where its lines are
+	 * @param random
+	 */
+	private void paint(SplittableRandom random) {
+		LineColor[] colors = LineColor.values();
+		for (int k = 0; k < colors.length; k++) this.palette[k] = colors[k];
+		for (int k = colors.length - 1; k > 0; k--) {
+			int other = random.nextInt(k + 1);
+			LineColor swap = this.palette[k];
+			this.palette[k] = this.palette[other];
+			this.palette[other] = swap;
+		}
+	}
+
+	private static int[] reversed(int[] cases) {
+		int[] reversed = new int[cases.length];
+		for (int k = 0; k < cases.length; k++) reversed[k] = cases[cases.length - 1 - k];
+		return reversed;
+	}
+
+	/**
+	 * @param cases
+	 * @param taken
+	 * @param from
+	 * @param to
+	 * @return the cases followed by the taken ones between from and to, excluded
+	 */
+	private static int[] joined(int[] cases, int[] taken, int from, int to) {
+		int[] joined = Arrays.copyOf(cases, cases.length + to - from);
+		System.arraycopy(taken, from, joined, cases.length, to - from);
+		return joined;
+	}
+
+	public int getSquareLength() {
+		return length;
+	}
+
+	public long getNodeLimit() {
+		return nodeLimit;
+	}
+
+	/**
+	 * @param nodeLimit node budget of the Solver checking each candidate, candidates it cannot prove unique are thrown away
+	 */
+	public void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @param timeout time budget of each generation in milliseconds, 0 for no limit
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return the number of paths tried by the last generation
+	 */
+	public int getTries() {
+		return tries;
+	}
+
+}
@@ -0,0 +1,211 @@
+package game.solver;
+
+import game.models.Level;
+import game.models.Line;
+import game.models.LineColor;
+
+/**
+ * Draws the forced moves of the lines of a level, the ones every solution from the current lines makes, as the Solver does :
+ * - a line whose end has a single case to go to, an empty case or its other node, goes there
+ * - an empty case next to the end of a line, whose only other open neighbor is one more case, can only be filled by that line
+ * A line not drawn yet starts from whichever of its nodes has a forced move.
+ *
+ * Lines are drawn through Line.add, so the moves go to the history of the level like the ones of the player.
+ * Only the lines whose end is close to a case just drawn are looked at again, from a worklist of colors.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Propagator {
+
+	private static final int COLORS = LineColor.values().length + 1;
+
+	private final Level level;
+	private final int length;
+	private final int size;
+	private final int[] heads = new int[Propagator.COLORS]; // end of the line of each color code, -1 while it is not drawn
+	private final int[] goals = new int[Propagator.COLORS]; // node the line of each color code must reach
+	private final int[][] nodes = new int[Propagator.COLORS][]; // nodes of each color code, null if it has not two of them
+	private final Line[] lines = new Line[Propagator.COLORS];
+	private final boolean[] done = new boolean[Propagator.COLORS];
+	private final int[] queue = new int[Integer.highestOneBit(Propagator.COLORS) << 1]; // colors to look at again, as a ring
+	private final boolean[] queued = new boolean[Propagator.COLORS];
+	private int first;
+	private int count;
+	private final int[] moves = new int[4];
+
+	/**
+	 * @param level whose lines are drawn from their nodes, as a level being played
+	 */
+	public Propagator(Level level) {
+		this.level = level;
+		this.length = level.getSquareLength();
+		this.size = level.getCaseCount();
+
+		for (int index = 0; index < this.size; index++) {
+			byte code = level.getNode(index);
+			if (code == 0) continue;
+
+			if (this.nodes[code] == null) this.nodes[code] = new int[] { index, -1 };
+			else if (this.nodes[code][1] < 0) this.nodes[code][1] = index;
+			else this.done[code] = true; // more nodes than a line can join, as levels in creation may have
+		}
+
+		for (int code = 1; code < Propagator.COLORS; code++) {
+			int[] ends = this.nodes[code];
+			Line line = this.level.getLine(LineColor.fromCode(code));
+			this.lines[code] = line;
+			if (ends == null || ends[1] < 0 || line == null) {
+				this.done[code] = true;
+				continue;
+			}
+
+			this.heads[code] = -1;
+			this.goals[code] = -1;
+			if (line.size() > 0) {
+				if (line.getIndex(0) == ends[0]) this.goals[code] = ends[1];
+				else if (line.getIndex(0) == ends[1]) this.goals[code] = ends[0];
+				this.heads[code] = line.getIndex(line.size() - 1);
+				this.done[code] |= this.goals[code] < 0 || line.isConnected();
+			}
+			if (!this.done[code]) this.push(code);
+		}
+	}
+
+	/**
+	 * Draws forced moves until there are none left
+	 * @return the number of cases drawn, -1 if a line was found to have no move left, the cases drawn until then staying drawn
+	 */
+	public int run() {
+		int drawn = 0;
+
+		while (this.count > 0) {
+			int code = this.queue[this.first];
+			this.first = (this.first + 1) & (this.queue.length - 1);
+			this.count--;
+			this.queued[code] = false;
+			if (this.done[code]) continue;
+
+			int next;
+			if (this.heads[code] >= 0) {
+				next = this.getForcedMove(code, this.heads[code], this.goals[code]);
+				if (next == -2) return -1;
+			} else {
+				// a line not drawn yet starts from the first of its nodes that has a forced move
+				int[] ends = this.nodes[code];
+				next = -1;
+				for (int k = 0; k < 2 && next < 0; k++) {
+					next = this.getForcedMove(code, ends[k], ends[1 - k]);
+					if (next == -2) return -1;
+					if (next >= 0) {
+						this.heads[code] = ends[k];
+						this.goals[code] = ends[1 - k];
+						this.lines[code].reset(this.level.getCase(ends[k]));
+					}
+				}
+			}
+			if (next < 0) continue;
+
+			this.lines[code].add(this.level.getCase(next));
+			this.heads[code] = next;
+			this.done[code] = next == this.goals[code];
+			drawn++;
+
+			// the moves of the lines ending within two cases of the case drawn may have changed
+			int i = next / this.length;
+			int j = next % this.length;
+			for (int di = -2; di <= 2; di++) {
+				for (int dj = Math.abs(di) - 2; dj <= 2 - Math.abs(di); dj++) {
+					int ni = i + di;
+					int nj = j + dj;
+					if (ni < 0 || nj < 0 || ni >= this.length || nj >= this.length) continue;
+
+					int index = ni * this.length + nj;
+					if (this.isOpenEnd(index)) this.push(this.level.getOwner(index) != 0 ? this.level.getOwner(index) : this.level.getNode(index));
+				}
+			}
+		}
+
+		return drawn;
+	}
+
+	/**
+	 * @param code
+	 * @param head end the line goes on from
+	 * @param goal node the line must reach
+	 * @return the case the line must go to, -1 if it has several moves, -2 if it has none or two cases only it can fill
+	 */
+	private int getForcedMove(int code, int head, int goal) {
+		int moveCount = 0;
+		for (int direction = 0; direction < 4; direction++) {
+			int next = this.getNeighbor(head, direction);
+			if (next >= 0 && (next == goal || this.isFree(next))) this.moves[moveCount++] = next;
+		}
+
+		if (moveCount == 0) return -2;
+		if (moveCount == 1) return this.moves[0];
+
+		// an empty case whose only other open neighbor is this head can only be filled by this line
+		int forced = -1;
+		for (int k = 0; k < moveCount; k++) {
+			if (this.moves[k] != goal && this.countOpen(this.moves[k]) == 2) {
+				if (forced >= 0) return -2;
+				forced = this.moves[k];
+			}
+		}
+		return forced;
+	}
+
+	/**
+	 * @param index
+	 * @return the number of neighbors of index that are empty or are an end of an unfinished line
+	 */
+	private int countOpen(int index) {
+		int open = 0;
+		for (int direction = 0; direction < 4; direction++) {
+			int next = this.getNeighbor(index, direction);
+			if (next >= 0 && (this.isFree(next) || this.isOpenEnd(next))) open++;
+		}
+		return open;
+	}
+
+	private boolean isOpenEnd(int index) {
+		int code = this.level.getOwner(index) != 0 ? this.level.getOwner(index) : this.level.getNode(index);
+		if (code == 0 || this.done[code]) return false;
+		if (this.heads[code] < 0) return this.level.getNode(index) == code; // both nodes of a line not drawn yet
+		return index == this.heads[code] || index == this.goals[code];
+	}
+
+	private boolean isFree(int index) {
+		return this.level.getNode(index) == 0 && this.level.getOwner(index) == 0;
+	}
+
+	/**
+	 * @param index
+	 * @param direction 0 up, 1 left, 2 down, 3 right
+	 * @return the index of the neighbor case, -1 if it is outside of the level
+	 */
+	private int getNeighbor(int index, int direction) {
+		switch (direction) {
+		case 0:
+			return index >= this.length ? index - this.length : -1;
+		case 1:
+			return index % this.length > 0 ? index - 1 : -1;
+		case 2:
+			return index + this.length < this.size ? index + this.length : -1;
+		default:
+			return index % this.length < this.length - 1 ? index + 1 : -1;
+		}
+	}
+
+	private void push(int code) {
+		if (this.queued[code]) return;
+
+		this.queued[code] = true;
+		this.queue[(this.first + this.count) & (this.queue.length - 1)] = code;
+		this.count++;
+	}
+
+}
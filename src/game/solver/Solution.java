@@ -0,0 +1,132 @@
+package game.solver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import game.models.Level;
+import game.models.Line;
+import game.models.LineColor;
+
+/**
+ * Result of a Solver run : search status, statistics and Line paths of the first solution found
+ * 
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Solution {
+	
+	public enum Status {
+		SOLVED, UNSOLVABLE, TIMEOUT, CANCELLED;
+	}
+
+	private final Status status;
+	private final int count; // number of solutions found, up to the limit given to the Solver
+	private final long nodes; // number of search nodes explored
+	private final long time; // search duration in nanoseconds
+	private final Map<LineColor, int[]> paths; // case indices of each Line, from one node to the other
+	
+	// search profile
+	private final long guesses; // nodes where a line had several moves to try
+	private final long branches; // moves tried at those nodes
+	private final int depth; // most guesses made on a single branch
+	private final double propagated; // share of the empty cases filled by forced moves alone, before any guess
+	public Solution(Status status, int count, long nodes, long time, Map<LineColor, int[]> paths, long guesses, long branches, int depth, double propagated) {
+		this.status = status;
+		this.count = count;
+		this.nodes = nodes;
+		this.time = time;
+		this.paths = paths != null ? paths : new LinkedHashMap<LineColor, int[]>();
+		this.guesses = guesses;
+		this.branches = branches;
+		this.depth = depth;
+		this.propagated = propagated;
+	}
+	
+	/**
+	 * Replaces the Lines of the level by the solution paths
+	 * @param level
+	 */
+	public void apply(Level level) {
+		for (Map.Entry<LineColor, int[]> entry : this.getPaths().entrySet()) {
+			Line line = level.getLine(entry.getKey());
+			int[] path = entry.getValue();
+			
+			line.reset(level.getCase(path[0]));
+			for (int k = 1; k < path.length; k++) {
+				line.add(level.getCase(path[k]));
+			}
+		}
+	}
+	
+	/**
+	 * @return a CRC32 of the solution paths, in LineColor order, to check a stored solution without storing its paths
+	 */
+	public long getChecksum() {
+		CRC32 crc = new CRC32();
+		for (LineColor lineColor : LineColor.values()) {
+			int[] path = this.getPaths().get(lineColor);
+			if (path == null) continue;
+			
+			crc.update(lineColor.getCode());
+			for (int index : path) {
+				crc.update(index >>> 8);
+				crc.update(index);
+			}
+		}
+		return crc.getValue();
+	}
+	
+	public boolean isSolved() {
+		return this.getCount() > 0;
+	}
+	
+	/**
+	 * @return true if the search was exhaustive and found a single solution (only meaningful for Solver.count with a limit of 2 or more)
+	 */
+	public boolean isUnique() {
+		return this.getCount() == 1 && this.getStatus().equals(Status.SOLVED);
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public Map<LineColor, int[]> getPaths() {
+		return paths;
+	}
+
+	public long getGuesses() {
+		return guesses;
+	}
+
+	/**
+	 * @return the average number of moves of the nodes where a guess was made, 1 if no guess was needed
+	 */
+	public double getBranching() {
+		return this.getGuesses() > 0 ? (double) this.branches / this.getGuesses() : 1;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public double getPropagated() {
+		return propagated;
+	}
+
+}
@@ -0,0 +1,347 @@
+package game.solver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import game.models.Canonical;
+import game.models.Level;
+import game.models.LineColor;
+import game.solver.Solution.Status;
+
+/**
+ * Solutions of levels kept between runs, found by the Canonical key of their level so rotations, reflections and
+ * recolorings of a solved level are solved as well
+ *
+ * Paths are stored in the coordinates of the canonical form without their colors, the color of a path is the one of
+ * the node it starts on. Recent solutions are kept in memory, up to capacity, the others are read from a file mapped
+ * in memory. The file is only ever appended to : a record is written as its key, its paths then a CRC32 of both, under
+ * a lock shared with the other processes writing the file. Readers take no lock, they stop at the first record whose
+ * CRC32 does not match, such as one being written, and read it again once it is complete.
+ *
+ * Only one instance may open a given file in a process.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class SolutionCache implements Closeable {
+
+	public static final int DEFAULT_CAPACITY = 256;
+	public static final int MAX_FILE_SIZE = 64 << 20; // 64 MB, about 300000 solutions of 15x15 levels
+
+	private static final int MAGIC = 0x46465343; // FFSC
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_HEAD = 12; // key then size of the paths
+	private static final int RECORD_TAIL = 4; // CRC32
+
+	private final Map<Long, int[][]> recent; // paths of the canonical forms used last, least recently used first
+	private final Map<Long, Integer> offsets = new HashMap<Long, Integer>(); // position of each record of the file
+	private final Canonical canonical = new Canonical();
+	private final FileChannel channel; // null if the cache is kept in memory only
+	private final boolean writable;
+	private MappedByteBuffer mapping;
+	private int scanned; // end of the last valid record read from the file
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Cache kept in memory only
+	 */
+	public SolutionCache() {
+		this(SolutionCache.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Cache kept in memory only
+	 * @param capacity number of solutions kept
+	 */
+	public SolutionCache(int capacity) {
+		this.recent = SolutionCache.newRecent(capacity);
+		this.channel = null;
+		this.writable = false;
+	}
+
+	/**
+	 * @param file created if it does not exist, only read if it cannot be written
+	 * @throws IOException if the file can neither be written nor read, or is not a solutions file
+	 */
+	public SolutionCache(File file) throws IOException {
+		this(file, SolutionCache.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param file created if it does not exist, only read if it cannot be written
+	 * @param capacity number of solutions kept in memory
+	 * @throws IOException if the file can neither be written nor read, or is not a solutions file
+	 */
+	public SolutionCache(File file, int capacity) throws IOException {
+		this.recent = SolutionCache.newRecent(capacity);
+
+		FileChannel channel;
+		boolean writable = true;
+		try {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		} catch (IOException e) {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			writable = false;
+		}
+		this.channel = channel;
+		this.writable = writable;
+
+		try {
+			if (this.writable && this.channel.size() < SolutionCache.HEADER_SIZE) {
+				FileLock lock = this.channel.lock();
+				try {
+					if (this.channel.size() < SolutionCache.HEADER_SIZE) {
+						ByteBuffer header = ByteBuffer.allocate(SolutionCache.HEADER_SIZE);
+						header.putInt(SolutionCache.MAGIC).putInt(SolutionCache.VERSION).flip();
+						this.channel.write(header, 0);
+					}
+				} finally {
+					lock.release();
+				}
+			}
+
+			this.refresh();
+			if (this.mapping == null || this.mapping.getInt(0) != SolutionCache.MAGIC || this.mapping.getInt(4) != SolutionCache.VERSION) {
+				throw new IOException(file.getPath() + " is not a solutions file");
+			}
+		} catch (IOException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	private static Map<Long, int[][]> newRecent(int capacity) {
+		return new LinkedHashMap<Long, int[][]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, int[][]> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @param level
+	 * @return a solution of the level, with the paths of its nodes, null if none is known
+	 */
+	public synchronized Solution get(Level level) {
+		long key = this.canonical.compute(level.getParameter());
+		int[][] paths = this.recent.get(key);
+
+		if (paths == null) {
+			paths = this.read(key);
+			if (paths != null) this.recent.put(key, paths);
+		}
+
+		Solution solution = paths != null ? this.toSolution(level, paths) : null;
+		if (solution != null) this.hits++;
+		else this.misses++;
+		return solution;
+	}
+
+	/**
+	 * Remembers a solution, written to the file at once so other processes and later runs find it
+	 * @param parameter parameter of the solved level
+	 * @param solution ignored if not solved
+	 */
+	public synchronized void put(String parameter, Solution solution) {
+		if (solution == null || !solution.isSolved()) return;
+
+		long key = this.canonical.compute(parameter);
+		if (this.recent.containsKey(key) || this.offsets.containsKey(key)) return;
+
+		int size = this.canonical.getLength() * this.canonical.getLength();
+		int[] forms = new int[size]; // index in the canonical form of each case of the level
+		for (int k = 0; k < size; k++) forms[this.canonical.getIndex(k)] = k;
+
+		int[][] paths = new int[solution.getPaths().size()][];
+		int count = 0;
+		for (int[] path : solution.getPaths().values()) {
+			int[] form = new int[path.length];
+			for (int position = 0; position < path.length; position++) form[position] = forms[path[position]];
+			paths[count++] = form;
+		}
+
+		this.recent.put(key, paths);
+		try {
+			this.write(key, paths);
+		} catch (IOException e) {
+			// the solution stays in memory only
+		}
+	}
+
+	/**
+	 * Maps paths of a canonical form back to a level, the canonical instance holding the form of its parameter
+	 * @param level
+	 * @param paths
+	 * @return the solution, null if the paths do not match the nodes of the level, as two levels may share a key
+	 */
+	private Solution toSolution(Level level, int[][] paths) {
+		Map<LineColor, int[]> solved = new LinkedHashMap<LineColor, int[]>();
+		int covered = 0;
+
+		for (int[] form : paths) {
+			if (form.length == 0) return null;
+			int[] path = new int[form.length];
+			for (int position = 0; position < form.length; position++) {
+				if (form[position] >= level.getCaseCount()) return null;
+				path[position] = this.canonical.getIndex(form[position]);
+			}
+
+			LineColor lineColor = LineColor.fromCode(level.getNode(path[0]));
+			if (lineColor == null || level.getNode(path[path.length - 1]) != lineColor.getCode() || solved.put(lineColor, path) != null) return null;
+			covered += path.length;
+		}
+
+		if (covered != level.getCaseCount()) return null;
+		return new Solution(Status.SOLVED, 1, 0, 0, solved, 0, 0, 0, 0);
+	}
+
+	/**
+	 * @param key
+	 * @return the paths stored in the file for the key, null if there are none
+	 */
+	private int[][] read(long key) {
+		if (this.channel == null) return null;
+
+		try {
+			Integer offset = this.offsets.get(key);
+			if (offset == null && this.refresh()) offset = this.offsets.get(key);
+			if (offset == null) return null;
+
+			ByteBuffer record = this.mapping.duplicate();
+			record.position(offset + SolutionCache.RECORD_HEAD);
+			int[][] paths = new int[record.getShort()][];
+			for (int count = 0; count < paths.length; count++) {
+				int[] path = new int[record.getShort() & 0xFFFF];
+				for (int position = 0; position < path.length; position++) path[position] = record.getShort() & 0xFFFF;
+				paths[count] = path;
+			}
+			return paths;
+		} catch (IOException | BufferUnderflowException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Appends a record to the file, after the last valid one, under the file lock
+	 * @param key
+	 * @param paths
+	 * @throws IOException
+	 */
+	private void write(long key, int[][] paths) throws IOException {
+		if (!this.writable) return;
+
+		int size = 2;
+		for (int[] path : paths) size += 2 + 2 * path.length;
+
+		ByteBuffer record = ByteBuffer.allocate(SolutionCache.RECORD_HEAD + size + SolutionCache.RECORD_TAIL);
+		record.putLong(key).putInt(size).putShort((short) paths.length);
+		for (int[] path : paths) {
+			record.putShort((short) path.length);
+			for (int index : path) record.putShort((short) index);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 0, record.position());
+		record.putInt((int) crc.getValue()).flip();
+
+		FileLock lock = this.channel.lock();
+		try {
+			this.refresh(); // other processes may have appended, or left a torn record that this one overwrites
+			if (this.offsets.containsKey(key) || this.scanned + record.remaining() > SolutionCache.MAX_FILE_SIZE) return;
+
+			int offset = this.scanned;
+			while (record.hasRemaining()) this.channel.write(record, offset + record.position());
+			this.refresh();
+			if (!this.offsets.containsKey(key)) this.offsets.put(key, offset);
+		} finally {
+			lock.release();
+		}
+	}
+
+	/**
+	 * Maps the file again if it grew, then indexes the records appended since the last refresh
+	 * @return true if records were found
+	 * @throws IOException
+	 */
+	private boolean refresh() throws IOException {
+		long size = Math.min(this.channel.size(), SolutionCache.MAX_FILE_SIZE);
+		if (this.mapping == null || size > this.mapping.capacity()) {
+			if (size < SolutionCache.HEADER_SIZE) return false;
+			this.mapping = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (this.scanned == 0) this.scanned = SolutionCache.HEADER_SIZE;
+		}
+
+		int found = this.offsets.size();
+		ByteBuffer records = this.mapping.duplicate();
+		CRC32 crc = new CRC32();
+
+		while (this.scanned + SolutionCache.RECORD_HEAD + SolutionCache.RECORD_TAIL <= records.capacity()) {
+			int offset = this.scanned;
+			long key = records.getLong(offset);
+			int length = records.getInt(offset + 8);
+			int end = offset + SolutionCache.RECORD_HEAD + length;
+			if (length < 2 || end + SolutionCache.RECORD_TAIL > records.capacity()) break;
+
+			records.limit(end).position(offset);
+			crc.reset();
+			crc.update(records);
+			records.limit(records.capacity());
+			if ((int) crc.getValue() != records.getInt(end)) break;
+
+			if (!this.offsets.containsKey(key)) this.offsets.put(key, offset);
+			this.scanned = end + SolutionCache.RECORD_TAIL;
+		}
+
+		return this.offsets.size() > found;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.channel != null) this.channel.close();
+	}
+
+	/**
+	 * @return number of solutions known, in memory or in the file
+	 */
+	public synchronized int size() {
+		int size = this.offsets.size();
+		for (Long key : this.recent.keySet()) {
+			if (!this.offsets.containsKey(key)) size++;
+		}
+		return size;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return true if the cache is kept in a file
+	 */
+	public boolean isPersistent() {
+		return this.channel != null;
+	}
+
+}
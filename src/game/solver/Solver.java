@@ -0,0 +1,868 @@
+package game.solver;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import game.models.Level;
+import game.models.Line;
+import game.models.LineColor;
+import game.solver.Solution.Status;
+
+/**
+ * Backtracking solver finding Line paths connecting every pair of nodes of a level and filling every case
+ * 
+ * Each Line grows from both of its nodes, each end of a line moving on until it meets the other one.
+ * Between two guesses, forced moves of every end are applied and the board is checked for dead cases,
+ * stranded regions and colors whose ends can no longer reach each other. Guesses are made on the end
+ * with the fewest moves, whichever line and side it is.
+ * Those checks run on a Bitboard of the free cases and open ends, kept along with the grid.
+ * 
+ * Given a TranspositionTable, states proven to have no solution are remembered by their Zobrist key,
+ * so a state reached again through another order of moves is pruned at once.
+ * 
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class Solver {
+	
+	private static final int TABLE_MIN_EMPTY = 8; // states with fewer empty cases are searched again faster than they are looked up
+	private static final int PROBE_MIN_EMPTY = 24; // states with fewer empty cases are searched faster than their moves are probed
+	private static final int CHECK_PERIOD = 7; // nodes explored between two checks of the time budget and cancellation, few enough to keep hints within a frame
+	
+	private final int length;
+	private final int size;
+	private final boolean valid; // false if a color does not have exactly two nodes
+	
+	private final int colorCount;
+	private final LineColor[] colors; // solver color id => LineColor
+	private final byte[] codes; // solver color id => LineColor code
+	private final int[] starts; // node each end starts from, end 2 * color and 2 * color + 1 are the two sides of a color
+	private final int[] ends; // moving end of each side of each color
+	private final boolean[] done;
+	
+	private final byte[] grid; // solver color id + 1 of each case, 0 if empty
+	private final Bitboard board; // free cases and open ends of the grid, for the bulk checks of isViable
+	private final int[] previous; // case each case has been reached from
+	private int empty;
+	
+	// trail of applied moves, undone when backtracking
+	private final int[] trailCases;
+	private final int[] trailEnds;
+	private int trailSize;
+	
+	// isViable buffers
+	private final long[] narrow;
+	private final long[] left;
+	private final long[] seed;
+	private final long[] region;
+	private final long[] border;
+	private final long[] dark; // cases whose row and column sum up to an even number, as the dark cases of a chessboard
+	private final int[] regionColors; // colors able to fill each region, both their ends touching it
+	private final int[] regionBalances; // light cases minus dark cases of each region
+	private final int[] slots; // region of each line a region needs, for isAssignable
+	private final int[] matches; // slot given to each color, -1 if none
+	private int visited; // colors already tried by the current augmenting path
+	
+	private final boolean hashed; // false if the level is too big for Zobrist keys
+	private long key; // Zobrist key of the current state
+	private TranspositionTable table;
+	private long hits;
+	private long misses;
+	private long stores;
+	
+	private long timeout = 0; // in milliseconds, 0 for no limit
+	private long nodeLimit = 0; // nodes explored by each search, 0 for no limit
+	private volatile boolean cancelled = false;
+	
+	private long deadline;
+	private long nodes;
+	
+	// search profile, used to rate the difficulty of levels
+	private long guesses; // nodes where the chosen line had several moves
+	private long branches; // moves tried at those nodes
+	private int depth;
+	private int maxDepth; // most guesses made on a single branch
+	private int propagated; // cases filled by forced moves before the first guess
+
+	private int limit;
+	private int count;
+	private Status interruption;
+	private Map<LineColor, int[]> paths;
+	private Map<LineColor, int[]> lastPaths;
+	private final BitSet propagatedCases = new BitSet(); // cases filled before the first guess
+	
+	public Solver(String parameter) {
+		this(Bitboard.of(parameter));
+	}
+	
+	/**
+	 * @param level whose lines are ignored, see addPrefix
+	 */
+	public Solver(Level level) {
+		this(Bitboard.of(level));
+	}
+	
+	/**
+	 * @param board whose lines are ignored, see addPrefix
+	 */
+	public Solver(Bitboard board) {
+		this.length = board.getLength();
+		this.size = this.length * this.length;
+		
+		this.grid = new byte[this.size];
+		this.previous = new int[this.size];
+		this.trailCases = new int[this.size];
+		this.trailEnds = new int[this.size];
+		
+		this.board = new Bitboard(this.length);
+		this.narrow = this.board.newMask();
+		this.left = this.board.newMask();
+		this.seed = this.board.newMask();
+		this.region = this.board.newMask();
+		this.border = this.board.newMask();
+		this.dark = this.board.newMask();
+		for (int index = 0; index < this.size; index++) {
+			if ((index / this.length + index % this.length) % 2 == 0) Bitboard.set(this.dark, this.board.getBit(index));
+		}
+		this.regionColors = new int[this.size];
+		this.regionBalances = new int[this.size];
+		
+		// nodes are grouped by LineColor code
+		int[] first = new int[LineColor.values().length + 1];
+		int[] second = new int[LineColor.values().length + 1];
+		int[] nodeCount = new int[LineColor.values().length + 1];
+		
+		for (int code = 1; code < nodeCount.length; code++) {
+			long[] color = board.getColor(code);
+			if (color == null) continue;
+			
+			for (int index = 0; index < this.size; index++) {
+				int bit = board.getBit(index);
+				if (Bitboard.get(color, bit) && Bitboard.get(board.getNodes(), bit)) {
+					if (nodeCount[code] == 0) first[code] = index;
+					else second[code] = index;
+					nodeCount[code]++;
+				}
+			}
+		}
+		
+		int colorCount = 0;
+		boolean valid = true;
+		for (int code = 1; code < nodeCount.length; code++) {
+			if (nodeCount[code] > 0) colorCount++;
+			if (nodeCount[code] != 0 && nodeCount[code] != 2) valid = false;
+		}
+		
+		this.valid = valid;
+		this.colorCount = colorCount;
+		this.slots = new int[colorCount];
+		this.matches = new int[colorCount];
+		this.colors = new LineColor[colorCount];
+		this.codes = new byte[colorCount];
+		this.starts = new int[2 * colorCount];
+		this.ends = new int[2 * colorCount];
+		this.done = new boolean[colorCount];
+		
+		int color = 0;
+		for (int code = 1; code < nodeCount.length; code++) {
+			if (nodeCount[code] > 0) {
+				this.colors[color] = LineColor.fromCode(code);
+				this.codes[color] = (byte) code;
+				this.starts[2 * color] = first[code];
+				this.starts[2 * color + 1] = nodeCount[code] > 1 ? second[code] : first[code];
+				this.grid[this.starts[2 * color]] = (byte) (color + 1);
+				this.grid[this.starts[2 * color + 1]] = (byte) (color + 1);
+				color++;
+			}
+		}
+		
+		for (int index = 0; index < this.size; index++) {
+			this.previous[index] = -1;
+			if (this.grid[index] == 0) {
+				this.empty++;
+			} else {
+				int bit = this.board.getBit(index);
+				Bitboard.clear(this.board.getFree(), bit);
+				Bitboard.set(this.board.getEnds(), bit);
+			}
+		}
+		
+		System.arraycopy(this.starts, 0, this.ends, 0, this.ends.length);
+		
+		this.hashed = Zobrist.supports(this.length);
+		if (this.hashed) {
+			this.key = Zobrist.getLength(this.length);
+			for (int index = 0; index < this.size; index++) {
+				if (this.grid[index] != 0) this.key ^= Zobrist.getCase(index, this.codes[this.grid[index] - 1]);
+			}
+			for (int end = 0; end < this.ends.length; end++) this.key ^= Zobrist.getHead(this.ends[end], this.codes[end >> 1]);
+		}
+	}
+	
+	/**
+	 * Fixes the start of the path of a color to the cases of a line, the search then only fills what the line leaves free
+	 * Prefixes must be added before the first search
+	 * @param line line starting at one of the nodes of its color, as drawn by the player
+	 * @return false if the line does not fit in the level (unknown color, line not starting at a node, case already taken)
+	 */
+	public boolean addPrefix(Line line) {
+		if (line.size() == 0) return true;
+		
+		int color = 0;
+		while (color < this.colorCount && this.colors[color] != line.getLineColor()) color++;
+		if (color == this.colorCount || this.done[color]) return false;
+		
+		int end = 2 * color;
+		if (line.getIndex(0) == this.starts[end + 1]) end++;
+		if (line.getIndex(0) != this.starts[end] || this.ends[end] != this.starts[end]) return false;
+		
+		for (int position = 1; position < line.size(); position++) {
+			int next = line.getIndex(position);
+			if (this.done[color] || (next != this.ends[end ^ 1] && this.grid[next] != 0)) return false;
+			this.apply(end, next);
+		}
+		return true;
+	}
+	
+	/**
+	 * Searches for a first solution
+	 * @return the search result
+	 */
+	public Solution solve() {
+		return this.count(1);
+	}
+	
+	/**
+	 * Searches for solutions until limit of them are found or the search space is exhausted
+	 * @param limit
+	 * @return the search result, with the paths of the first solution found
+	 */
+	public Solution count(int limit) {
+		long start = System.nanoTime();
+		this.deadline = this.getTimeout() > 0 ? start + this.getTimeout() * 1000000L : Long.MAX_VALUE;
+		this.nodes = 0;
+		this.guesses = 0;
+		this.branches = 0;
+		this.depth = 0;
+		this.maxDepth = 0;
+		this.propagated = 0;
+		this.limit = limit;
+		this.count = 0;
+		this.interruption = null;
+		this.paths = null;
+		this.lastPaths = null;
+		this.propagatedCases.clear();
+		
+		if (this.valid) {
+			int mark = this.trailSize;
+			this.search();
+			this.undo(mark);
+		}
+		if (this.table != null) {
+			this.table.record(this.hits, this.misses, this.stores);
+			this.hits = 0;
+			this.misses = 0;
+			this.stores = 0;
+		}
+		
+		Status status = this.interruption;
+		if (status == null) status = this.count > 0 ? Status.SOLVED : Status.UNSOLVABLE;
+		
+		// the search is undone, empty is back to the number of empty cases of the level
+		double propagated = this.empty > 0 ? (double) this.propagated / this.empty : 1;
+		return new Solution(status, this.count, this.nodes, System.nanoTime() - start, this.paths, this.guesses, this.branches, this.maxDepth, propagated);
+	}
+	
+	/**
+	 * Explores the current state
+	 * @return true if the search must stop (limit of solutions reached, time budget exceeded or cancellation)
+	 */
+	private boolean search() {
+		this.nodes++;
+		if ((this.nodes & Solver.CHECK_PERIOD) == 0 && this.isInterrupted()) return true;
+		
+		int mark = this.trailSize;
+		int empty = this.empty;
+		if (!this.propagate() || (this.empty >= Solver.PROBE_MIN_EMPTY && !this.probe())) {
+			this.undo(mark);
+			return false;
+		}
+		if (this.nodes == 1) {
+			this.propagated = empty - this.empty;
+			for (int index = 0; index < this.size; index++) {
+				if (this.grid[index] != 0) this.propagatedCases.set(index);
+			}
+		}
+		
+		int end = this.chooseEnd();
+		if (end < 0) {
+			boolean stop = false;
+			if (this.empty == 0) {
+				this.lastPaths = this.getCurrentPaths();
+				if (this.count == 0) this.paths = this.lastPaths;
+				this.count++;
+				stop = this.count >= this.limit;
+			}
+			
+			this.undo(mark);
+			return stop;
+		}
+		
+		boolean tabled = this.table != null && this.empty >= Solver.TABLE_MIN_EMPTY;
+		if (tabled) {
+			if (this.table.contains(this.key)) {
+				this.hits++;
+				this.undo(mark);
+				return false;
+			}
+			this.misses++;
+		}
+		int count = this.count;
+		
+		int[] moves = new int[4];
+		int moveCount = this.getMoves(end, moves);
+		if (moveCount > 1) {
+			this.guesses++;
+			this.branches += moveCount;
+			this.maxDepth = Math.max(this.maxDepth, ++this.depth);
+		}
+		
+		for (int k = 0; k < moveCount; k++) {
+			int branch = this.trailSize;
+			this.apply(end, moves[k]);
+			
+			if (this.search()) return true;
+			this.undo(branch);
+		}
+		
+		if (moveCount > 1) this.depth--;
+		if (tabled && this.count == count) {
+			this.table.store(this.key, this.empty);
+			this.stores++;
+		}
+		this.undo(mark);
+		return false;
+	}
+	
+	private boolean isInterrupted() {
+		if (this.isCancelled()) this.interruption = Status.CANCELLED;
+		else if (System.nanoTime() > this.deadline) this.interruption = Status.TIMEOUT;
+		else if (this.getNodeLimit() > 0 && this.nodes >= this.getNodeLimit()) this.interruption = Status.TIMEOUT;
+		return this.interruption != null;
+	}
+	
+	/**
+	 * Applies forced moves until there are none left, then checks the state is still solvable
+	 * @return false if the current state has no solution
+	 */
+	private boolean propagate() {
+		int[] moves = new int[4];
+		boolean changed = true;
+		
+		while (changed) {
+			changed = false;
+			
+			for (int end = 0; end < this.ends.length; end++) {
+				if (this.done[end >> 1]) continue;
+				
+				int moveCount = this.getMoves(end, moves);
+				int forced = moveCount == 1 ? moves[0] : -1;
+				
+				// an empty case whose only other open neighbor is this end can only be filled by this line
+				for (int k = 0; k < moveCount && moveCount > 1; k++) {
+					if (moves[k] != this.ends[end ^ 1] && this.countOpen(moves[k]) == 2) {
+						if (forced >= 0) return false;
+						forced = moves[k];
+					}
+				}
+				
+				if (moveCount == 0) return false;
+				if (forced >= 0) {
+					this.apply(end, forced);
+					changed = true;
+				}
+			}
+		}
+		
+		return this.isViable();
+	}
+	
+	/**
+	 * Tries every move of every end with propagation : moves leading to no solution are ruled out,
+	 * an end left with a single move makes it, until no end has a single move left
+	 * @return false if the current state has no solution
+	 */
+	private boolean probe() {
+		int[] moves = new int[4];
+		boolean changed = true;
+		
+		while (changed) {
+			changed = false;
+			
+			for (int end = 0; end < this.ends.length; end++) {
+				if (this.done[end >> 1]) continue;
+				
+				int moveCount = this.getMoves(end, moves);
+				int alive = 0;
+				int last = -1;
+				for (int k = 0; k < moveCount && alive < 2; k++) {
+					int mark = this.trailSize;
+					this.apply(end, moves[k]);
+					if (this.propagate()) {
+						alive++;
+						last = moves[k];
+					}
+					this.undo(mark);
+				}
+				
+				if (alive == 0) return false;
+				if (alive == 1) {
+					this.apply(end, last);
+					if (!this.propagate()) return false;
+					changed = true;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @return the end of an unfinished color with the fewest moves, the last end moved if it is one of them,
+	 * -1 if every color is finished
+	 */
+	private int chooseEnd() {
+		int[] moves = new int[4];
+		int best = -1;
+		int bestCount = Integer.MAX_VALUE;
+		int last = this.trailSize > 0 ? this.trailEnds[this.trailSize - 1] : -1; // a line goes on rather than leaving cuts all over the board
+		
+		for (int end = 0; end < this.ends.length; end++) {
+			if (this.done[end >> 1]) continue;
+			
+			int moveCount = this.getMoves(end, moves);
+			if (moveCount < bestCount || (moveCount == bestCount && end == last)) {
+				best = end;
+				bestCount = moveCount;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Fills moves with the cases an end can move to, the other end of its line first then the most constrained cases
+	 * @param end
+	 * @param moves
+	 * @return the number of moves
+	 */
+	private int getMoves(int end, int[] moves) {
+		int head = this.ends[end];
+		int goal = this.ends[end ^ 1];
+		int moveCount = 0;
+		
+		for (int direction = 0; direction < 4; direction++) {
+			int next = this.getNeighbor(head, direction);
+			if (next < 0) continue;
+			
+			if (next == goal) {
+				// finishing the line is always tried first
+				for (int k = moveCount; k > 0; k--) moves[k] = moves[k - 1];
+				moves[0] = next;
+				moveCount++;
+			} else if (this.grid[next] == 0) {
+				int free = this.countFree(next);
+				int k = moveCount;
+				while (k > 0 && moves[k - 1] != goal && this.countFree(moves[k - 1]) > free) {
+					moves[k] = moves[k - 1];
+					k--;
+				}
+				moves[k] = next;
+				moveCount++;
+			}
+		}
+		
+		return moveCount;
+	}
+	
+	/**
+	 * Moves an end to a case, the line is finished if it is the other end
+	 * @param end
+	 * @param next
+	 */
+	private void apply(int end, int next) {
+		this.trailCases[this.trailSize] = next;
+		this.trailEnds[this.trailSize] = end;
+		this.trailSize++;
+		
+		int color = end >> 1;
+		int head = this.ends[end];
+		Bitboard.clear(this.board.getEnds(), this.board.getBit(head));
+		
+		if (next == this.ends[end ^ 1]) {
+			this.done[color] = true;
+			Bitboard.clear(this.board.getEnds(), this.board.getBit(next));
+			if (this.hashed) this.key ^= Zobrist.getHead(head, this.codes[color]) ^ Zobrist.getHead(next, this.codes[color]);
+		} else {
+			this.previous[next] = head;
+			this.ends[end] = next;
+			this.grid[next] = (byte) (color + 1);
+			this.empty--;
+			
+			int bit = this.board.getBit(next);
+			Bitboard.clear(this.board.getFree(), bit);
+			Bitboard.set(this.board.getEnds(), bit);
+			if (this.hashed) this.key ^= Zobrist.getHead(head, this.codes[color]) ^ Zobrist.getHead(next, this.codes[color]) ^ Zobrist.getCase(next, this.codes[color]);
+		}
+	}
+	
+	private void undo(int mark) {
+		while (this.trailSize > mark) {
+			this.trailSize--;
+			int next = this.trailCases[this.trailSize];
+			int end = this.trailEnds[this.trailSize];
+			int color = end >> 1;
+			
+			if (this.done[color]) {
+				// a finished line is not moved again, its last move was the one finishing it
+				int head = this.ends[end];
+				this.done[color] = false;
+				Bitboard.set(this.board.getEnds(), this.board.getBit(head));
+				Bitboard.set(this.board.getEnds(), this.board.getBit(next));
+				if (this.hashed) this.key ^= Zobrist.getHead(head, this.codes[color]) ^ Zobrist.getHead(next, this.codes[color]);
+			} else {
+				int head = this.previous[next];
+				this.ends[end] = head;
+				this.grid[next] = 0;
+				this.empty++;
+				
+				int bit = this.board.getBit(next);
+				Bitboard.set(this.board.getFree(), bit);
+				Bitboard.clear(this.board.getEnds(), bit);
+				Bitboard.set(this.board.getEnds(), this.board.getBit(head));
+				if (this.hashed) this.key ^= Zobrist.getHead(head, this.codes[color]) ^ Zobrist.getHead(next, this.codes[color]) ^ Zobrist.getCase(next, this.codes[color]);
+			}
+		}
+	}
+	
+	/**
+	 * Checks that every empty case can still be crossed by a line,
+	 * that every empty region touches both ends of an unfinished line,
+	 * that every unfinished line can still reach its other end
+	 * and that the lines able to fill each region can match its light and dark cases
+	 * @return false if the current state has no solution
+	 */
+	private boolean isViable() {
+		// dead cases : a line crossing an empty case needs two open neighbors, only cases with less than three of them can fail
+		Bitboard board = this.board;
+		int words = board.getWordCount();
+		if (board.getNarrowCases(this.narrow)) {
+			for (int word = 0; word < words; word++) {
+				for (long bits = this.narrow[word]; bits != 0; bits &= bits - 1) {
+					int index = board.getIndex(64 * word + Long.numberOfTrailingZeros(bits));
+					
+					int open = 0;
+					int ends = 0;
+					int endColors = 0;
+					for (int direction = 0; direction < 4; direction++) {
+						int next = this.getNeighbor(index, direction);
+						if (next < 0) continue;
+						
+						if (this.grid[next] == 0) {
+							open++;
+						} else if (this.isOpenEnd(next)) {
+							open++;
+							ends++;
+							endColors |= 1 << (this.grid[next] - 1);
+						}
+					}
+					if (open < 2) return false;
+					if (open == 2 && ends == 2 && Integer.bitCount(endColors) == 2) return false; // would connect two different lines
+				}
+			}
+		}
+		
+		// stranded regions and color reachability
+		int reachable = 0;
+		for (int color = 0; color < this.colorCount; color++) {
+			if (!this.done[color] && this.isNextTo(this.ends[2 * color], this.ends[2 * color + 1])) reachable |= 1 << color;
+		}
+		
+		long[] free = board.getFree();
+		System.arraycopy(free, 0, this.left, 0, words);
+		int regionCount = 0;
+		for (int word = 0; word < words; word++) {
+			while (this.left[word] != 0) {
+				this.seed[word] = Long.lowestOneBit(this.left[word]);
+				board.fill(this.seed, this.left, this.region);
+				this.seed[word] = 0;
+				board.getNeighbors(this.region, this.border);
+				for (int k = 0; k < words; k++) this.left[k] &= ~this.region[k];
+				
+				int firstMask = 0;
+				int secondMask = 0;
+				for (int color = 0; color < this.colorCount; color++) {
+					if (this.done[color]) continue;
+					if (Bitboard.get(this.border, board.getBit(this.ends[2 * color]))) firstMask |= 1 << color;
+					if (Bitboard.get(this.border, board.getBit(this.ends[2 * color + 1]))) secondMask |= 1 << color;
+				}
+				
+				if ((firstMask & secondMask) == 0) return false; // no line can fill this region
+				reachable |= firstMask & secondMask;
+				
+				int balance = 0;
+				for (int k = 0; k < words; k++) balance += Long.bitCount(this.region[k]) - 2 * Long.bitCount(this.region[k] & this.dark[k]);
+				this.regionColors[regionCount] = firstMask & secondMask;
+				this.regionBalances[regionCount] = balance;
+				regionCount++;
+			}
+		}
+		
+		for (int color = 0; color < this.colorCount; color++) {
+			if (!this.done[color] && (reachable & (1 << color)) == 0) return false;
+		}
+		
+		return this.isBalanced(regionCount) && this.isAssignable(regionCount);
+	}
+	
+	/**
+	 * Checks the light and dark cases of the regions found by isViable
+	 * The cases a line fills alternate between light and dark ones : between two dark ends they hold one more light
+	 * case than dark ones, between two light ends one more dark case, otherwise as many of both. Each line fills
+	 * cases of a single region, so the lines of a region must make up for its balance.
+	 * @param regionCount
+	 * @return false if a region cannot be balanced by the lines able to fill it
+	 */
+	private boolean isBalanced(int regionCount) {
+		for (int region = 0; region < regionCount; region++) {
+			int forced = 0; // balance of the lines only able to fill this region
+			int more = 0; // lines of other regions as well, able to add one to the balance
+			int less = 0; // or to take one from it
+			
+			for (int color = 0; color < this.colorCount; color++) {
+				if ((this.regionColors[region] & (1 << color)) == 0) continue;
+				
+				int balance = this.getBalance(color);
+				if (balance == 0) continue;
+				
+				boolean alone = true;
+				for (int other = 0; other < regionCount && alone; other++) alone = other == region || (this.regionColors[other] & (1 << color)) == 0;
+				if (alone) forced += balance;
+				else if (balance > 0) more++;
+				else less++;
+			}
+			
+			if (this.regionBalances[region] < forced - less || this.regionBalances[region] > forced + more) return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Checks that each region found by isViable can be given lines of its own, as a line fills cases of a single region :
+	 * a region needs a line, and as many lines of the sign of its balance as its balance, found by augmenting paths
+	 * @param regionCount
+	 * @return false if some regions have to share the lines they need
+	 */
+	private boolean isAssignable(int regionCount) {
+		int slotCount = 0;
+		for (int region = 0; region < regionCount; region++) {
+			int need = Math.max(1, Math.abs(this.regionBalances[region]));
+			if (slotCount + need > this.colorCount) return false;
+			for (int k = 0; k < need; k++) this.slots[slotCount++] = region;
+		}
+		
+		for (int color = 0; color < this.colorCount; color++) this.matches[color] = -1;
+		for (int slot = 0; slot < slotCount; slot++) {
+			this.visited = 0;
+			if (!this.assign(slot)) return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @param slot
+	 * @return true if a color was found for the slot, other slots having been given other colors if needed
+	 */
+	private boolean assign(int slot) {
+		int region = this.slots[slot];
+		int sign = Integer.signum(this.regionBalances[region]);
+		
+		for (int colors = this.regionColors[region] & ~this.visited; colors != 0; colors &= colors - 1) {
+			int color = Integer.numberOfTrailingZeros(colors);
+			if (sign != 0 && this.getBalance(color) != sign) continue;
+			
+			this.visited |= 1 << color;
+			if (this.matches[color] < 0 || this.assign(this.matches[color])) {
+				this.matches[color] = slot;
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @param color
+	 * @return light cases minus dark cases left for the line of a color to fill between its ends
+	 */
+	private int getBalance(int color) {
+		boolean first = Bitboard.get(this.dark, this.board.getBit(this.ends[2 * color]));
+		boolean second = Bitboard.get(this.dark, this.board.getBit(this.ends[2 * color + 1]));
+		return first == second ? (first ? 1 : -1) : 0;
+	}
+	
+	/**
+	 * @param index
+	 * @return true if index is an end of an unfinished line
+	 */
+	private boolean isOpenEnd(int index) {
+		int color = this.grid[index] - 1;
+		return !this.done[color] && (index == this.ends[2 * color] || index == this.ends[2 * color + 1]);
+	}
+	
+	/**
+	 * @param index
+	 * @return the number of neighbors of index that are empty or are an end of an unfinished line
+	 */
+	private int countOpen(int index) {
+		int open = 0;
+		for (int direction = 0; direction < 4; direction++) {
+			int next = this.getNeighbor(index, direction);
+			if (next >= 0 && (this.grid[next] == 0 || this.isOpenEnd(next))) open++;
+		}
+		return open;
+	}
+	
+	private int countFree(int index) {
+		int free = 0;
+		for (int direction = 0; direction < 4; direction++) {
+			int next = this.getNeighbor(index, direction);
+			if (next >= 0 && this.grid[next] == 0) free++;
+		}
+		return free;
+	}
+	
+	/**
+	 * @param index
+	 * @param direction 0 up, 1 left, 2 down, 3 right
+	 * @return the index of the neighbor case, -1 if it is outside of the level
+	 */
+	private int getNeighbor(int index, int direction) {
+		switch (direction) {
+		case 0:
+			return index >= this.length ? index - this.length : -1;
+		case 1:
+			return index % this.length > 0 ? index - 1 : -1;
+		case 2:
+			return index + this.length < this.size ? index + this.length : -1;
+		default:
+			return index % this.length < this.length - 1 ? index + 1 : -1;
+		}
+	}
+	
+	private boolean isNextTo(int index1, int index2) {
+		int diff = Math.abs(index1 - index2);
+		return diff == this.length || (diff == 1 && index1 / this.length == index2 / this.length);
+	}
+	
+	/**
+	 * @return the paths of the current (finished) state, from the first node of each color to the other
+	 */
+	private Map<LineColor, int[]> getCurrentPaths() {
+		Map<LineColor, int[]> paths = new LinkedHashMap<LineColor, int[]>();
+		
+		for (int color = 0; color < this.colorCount; color++) {
+			// nodes are never reached from another case
+			int firstLength = 1;
+			for (int index = this.ends[2 * color]; this.previous[index] >= 0; index = this.previous[index]) firstLength++;
+			int secondLength = 1;
+			for (int index = this.ends[2 * color + 1]; this.previous[index] >= 0; index = this.previous[index]) secondLength++;
+			
+			int[] path = new int[firstLength + secondLength];
+			int index = this.ends[2 * color];
+			for (int k = firstLength - 1; k >= 0; k--) {
+				path[k] = index;
+				index = this.previous[index];
+			}
+			index = this.ends[2 * color + 1];
+			for (int k = firstLength; k < path.length; k++) {
+				path[k] = index;
+				index = this.previous[index];
+			}
+			
+			paths.put(this.colors[color], path);
+		}
+		
+		return paths;
+	}
+
+	/**
+	 * @return the paths of the last solution found by the last search, null if it found none
+	 * With a limit of 2, they are the paths of a second solution when the level has several
+	 */
+	public Map<LineColor, int[]> getLastPaths() {
+		return lastPaths;
+	}
+
+	/**
+	 * @return the cases of the nodes and the ones filled by forced moves before the first guess of the last search
+	 */
+	public BitSet getPropagatedCases() {
+		return (BitSet) propagatedCases.clone();
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @param timeout time budget of each search in milliseconds, 0 for no limit
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+	
+	public TranspositionTable getTable() {
+		return table;
+	}
+	
+	/**
+	 * A table can be shared by solvers of any level on any thread : the key of a state holds its taken cases and the ends
+	 * of its unfinished lines, which is all that is left to solve, so states of different levels only share a key if they
+	 * share what is left to solve.
+	 * Pruned states are not explored again, so nodes and the search profile depend on what the table already holds.
+	 * @param table table of the states without solution, null to search without one
+	 */
+	public void setTable(TranspositionTable table) {
+		this.table = this.hashed ? table : null;
+	}
+	
+	public long getNodeLimit() {
+		return nodeLimit;
+	}
+
+	/**
+	 * Unlike the time budget, a node budget gives the same result on every machine
+	 * @param nodeLimit number of nodes explored by each search before it gives up, 0 for no limit
+	 */
+	public void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+	
+	/**
+	 * Stops the current search as soon as possible, can be called from any thread
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+}
@@ -0,0 +1,122 @@
+package game.solver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed size table of the board states a search proved to have no solution, shared by solvers on any number of threads
+ *
+ * States are found by their Zobrist key (see Zobrist). Each bucket holds two entries : the first one keeps the state
+ * with the most empty cases, whose search saved the most work, the second one always takes the last state stored.
+ *
+ * The table takes no lock : an entry is written as its key xor its data then its data, a reader only trusts an entry
+ * whose two words agree, so an entry torn by two threads writing at once is read as missing, never as a wrong state.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public class TranspositionTable {
+
+	public static final int DEFAULT_BITS = 16; // 65536 buckets, 2 MB
+
+	private final AtomicLongArray entries; // key ^ data then data, two entries per bucket
+	private final int mask;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+
+	public TranspositionTable() {
+		this(TranspositionTable.DEFAULT_BITS);
+	}
+
+	/**
+	 * @param bits the table holds 2^bits buckets of 2 entries, 32 bytes each
+	 */
+	public TranspositionTable(int bits) {
+		this.entries = new AtomicLongArray(4 << bits);
+		this.mask = (1 << bits) - 1;
+	}
+
+	/**
+	 * Lookups are counted by the caller and added with record, so the search does not share a counter between threads at each node
+	 * @param key
+	 * @return true if the state of this key was stored as having no solution
+	 */
+	public boolean contains(long key) {
+		int bucket = 4 * ((int) key & this.mask);
+		for (int entry = bucket; entry < bucket + 4; entry += 2) {
+			long data = this.entries.get(entry + 1);
+			if (data != 0 && (this.entries.get(entry) ^ data) == key) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Remembers that a state has no solution
+	 * @param key
+	 * @param empty number of empty cases of the state, states with the most of them are kept first
+	 */
+	public void store(long key, int empty) {
+		long data = empty + 1L; // never 0, which marks an unused entry
+		int bucket = 4 * ((int) key & this.mask);
+		int entry = data >= this.entries.get(bucket + 1) ? bucket : bucket + 2;
+
+		this.entries.lazySet(entry + 1, 0); // readers see no entry until both words are written
+		this.entries.lazySet(entry, key ^ data);
+		this.entries.lazySet(entry + 1, data);
+	}
+	
+	/**
+	 * Adds the lookups and stores of a search to the metrics
+	 * @param hits
+	 * @param misses
+	 * @param stores
+	 */
+	public void record(long hits, long misses, long stores) {
+		this.hits.add(hits);
+		this.misses.add(misses);
+		this.stores.add(stores);
+	}
+
+	/**
+	 * Forgets every state and resets the metrics, must not be called while the table is searched
+	 */
+	public void clear() {
+		for (int k = 0; k < this.entries.length(); k++) this.entries.set(k, 0);
+		this.hits.reset();
+		this.misses.reset();
+		this.stores.reset();
+	}
+
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	public long getStores() {
+		return this.stores.sum();
+	}
+
+	/**
+	 * @return the share of lookups that found their state, 0 if there was none
+	 */
+	public double getHitRate() {
+		long hits = this.getHits();
+		long lookups = hits + this.getMisses();
+		return lookups > 0 ? (double) hits / lookups : 0;
+	}
+
+	/**
+	 * @return the memory held by the table in bytes
+	 */
+	public long getFootprint() {
+		return 8L * this.entries.length();
+	}
+
+}
@@ -0,0 +1,74 @@
+package game.solver;
+
+import java.util.Random;
+
+import game.models.Level;
+import game.models.LineColor;
+
+/**
+ * Zobrist keys of board states : the key of a state is the xor of the keys of its features, a case taken by a color,
+ * and an end of a color on a case, so extending or retracting a path only xors the keys of the cases it changed
+ *
+ * Keys are drawn once from a fixed seed, the key of a state is the same in every run and on every thread.
+ *
+ * @author Romain Milon
+ * @author Raphal Breteau
+ * @version 1.0
+ *
+ */
+public final class Zobrist {
+
+	public static final int MAX_CASES = Level.MAX_SQUARE_LENGTH * Level.MAX_SQUARE_LENGTH;
+
+	private static final int COLORS = LineColor.values().length + 1;
+	private static final long SEED = 0x5EED0F10L;
+
+	private static final long[] CASES = new long[Zobrist.MAX_CASES * Zobrist.COLORS];
+	private static final long[] HEADS = new long[Zobrist.MAX_CASES * Zobrist.COLORS];
+	private static final long[] LENGTHS = new long[Level.MAX_SQUARE_LENGTH + 1];
+
+	static {
+		Random random = new Random(Zobrist.SEED);
+		for (int k = 0; k < Zobrist.CASES.length; k++) Zobrist.CASES[k] = random.nextLong();
+		for (int k = 0; k < Zobrist.HEADS.length; k++) Zobrist.HEADS[k] = random.nextLong();
+		for (int k = 0; k < Zobrist.LENGTHS.length; k++) Zobrist.LENGTHS[k] = random.nextLong();
+	}
+
+	private Zobrist() {
+	}
+
+	/**
+	 * @param index
+	 * @param code LineColor code
+	 * @return the key of a case taken by a color, node or line
+	 */
+	public static long getCase(int index, int code) {
+		return Zobrist.CASES[index * Zobrist.COLORS + code];
+	}
+
+	/**
+	 * @param index
+	 * @param code LineColor code
+	 * @return the key of an end of a color on a case, either end of an unfinished line
+	 */
+	public static long getHead(int index, int code) {
+		return Zobrist.HEADS[index * Zobrist.COLORS + code];
+	}
+
+	/**
+	 * @param length
+	 * @return the key of the square length, so boards of different lengths never share the keys of their cases
+	 */
+	public static long getLength(int length) {
+		return Zobrist.LENGTHS[length];
+	}
+
+	/**
+	 * @param length
+	 * @return true if boards of this square length have keys
+	 */
+	public static boolean supports(int length) {
+		return length > 0 && length <= Level.MAX_SQUARE_LENGTH;
+	}
+
+}